@@ -45,6 +45,20 @@ public class DuckConnection implements Connection {
     return wrapper;
   }
 
+  /**
+   * Opens a new connection to the same database. Unlike this connection, the duplicate is closed
+   * by close(), so the caller is responsible for closing it.
+   */
+  public DuckConnection duplicate() {
+    try {
+      DuckConnection c = wrap((DuckDBConnection) duck.duplicate());
+      c.protectedFromClose = false;
+      return c;
+    } catch (SQLException e) {
+      throw new DbException(e);
+    }
+  }
+
   public DuckDBAppender createAppender(String schema, String table) throws SQLException {
     return duck.createAppender(schema, table);
   }
@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.List;
 import java.util.function.Supplier;
 import org.duckdb.DuckDBConnection;
@@ -150,7 +151,24 @@ public class DuckDb implements AutoCloseable {
   }
 
   public SqlTemplate template() {
-    return SqlTemplate.create(Suppliers.ofInstance(getConnection()));
+    return SqlTemplate.create(Suppliers.ofInstance(getConnection()))
+        .batchConnectionSupplier(this::duplicateConnection);
+  }
+
+  /**
+   * Batches run on a duplicate of the connection so that their transaction does not affect other
+   * users of the shared connection. The duplicate sees the same database but not TEMP tables, so it
+   * is given the same session settings as initSession().
+   */
+  private DuckConnection duplicateConnection() {
+    DuckConnection c = getConnection().duplicate();
+    try (Statement st = c.createStatement()) {
+      st.execute("set TimeZone='UTC'");
+    } catch (SQLException e) {
+      c.dispose();
+      throw new DbException(e);
+    }
+    return c;
   }
 
   public void close() {
@@ -1,6 +1,7 @@
 package bq.duckdb;
 
 import static bq.util.S.isNotBlank;
+import static java.util.stream.Collectors.joining;
 
 import bq.sql.DbException;
 import bq.sql.ResultSetTextFormatter;
@@ -22,6 +23,7 @@ import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import org.duckdb.DuckDBAppender;
 import org.duckdb.DuckDBConnection;
@@ -30,6 +32,8 @@ public class DuckTable {
 
   static FluentLogger logger = FluentLogger.forEnclosingClass();
 
+  static AtomicLong stagingCounter = new AtomicLong();
+
   DuckDb db;
   String table;
 
@@ -95,6 +99,51 @@ public class DuckTable {
             });
   }
 
+  /**
+   * Bulk alternative to update(rowId, column, val). The consumer appends one row per update to a
+   * temporary staging table whose first column is the target rowid, followed by the given columns
+   * in order. The staged rows are then applied with a single UPDATE ... FROM join.
+   *
+   * @param columns columns to update
+   * @param consumer appends (rowid, col1, col2, ...) rows
+   * @return number of rows updated
+   */
+  public int updateByRowId(List<String> columns, DuckAppenderConsumer consumer) {
+    Preconditions.checkArgument(columns != null && !columns.isEmpty(), "columns cannot be empty");
+    Preconditions.checkNotNull(consumer, "consumer");
+
+    String staging = String.format("stage_%s_%s", table, stagingCounter.incrementAndGet());
+    DuckTable stagingTable = db.table(staging);
+    try {
+      // copy the column types from the target table so that the appender matches exactly
+      db.template()
+          .execute(
+              c ->
+                  c.sql(
+                          "CREATE TEMP TABLE ##staging## AS SELECT rowid AS bq_row_id, ##columns##"
+                              + " FROM ##table## LIMIT 0")
+                      .bind("staging", staging)
+                      .bind("columns", String.join(", ", columns))
+                      .bind("table", table));
+
+      stagingTable.append(consumer);
+
+      String assignments =
+          columns.stream().map(col -> String.format("%s=s.%s", col, col)).collect(joining(", "));
+      return db.template()
+          .update(
+              c ->
+                  c.sql(
+                          "UPDATE ##table## SET ##assignments## FROM ##staging## s WHERE"
+                              + " ##table##.rowid=s.bq_row_id")
+                      .bind("table", table)
+                      .bind("assignments", assignments)
+                      .bind("staging", staging));
+    } finally {
+      stagingTable.drop();
+    }
+  }
+
   public int deleteRow(long rowId) {
 
     return db.template()
@@ -3,6 +3,8 @@ package bq.duckdb;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import bq.test.BqTest;
+import java.util.List;
+import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.Test;
 
 public class DuckTableTest extends BqTest {
@@ -19,4 +21,57 @@ public class DuckTableTest extends BqTest {
 
     assertThat(db.table("cities").rowCount()).isEqualTo(10);
   }
+
+  @Test
+  public void testUpdateByRowId() {
+    var db = getDb();
+    db.template()
+        .execute(
+            "create table test as select range as id, null::double as x, null::double as y"
+                + " from range(5)");
+
+    List<Boolean> temporary = Lists.newArrayList();
+    int count =
+        db.table("test")
+            .updateByRowId(
+                List.of("x", "y"),
+                appender -> {
+                  temporary.add(
+                      db.template()
+                          .queryResult(
+                              c ->
+                                  c.sql(
+                                      "select temporary from duckdb_tables()"
+                                          + " where table_name like 'stage_test_%'"),
+                              rs -> rs.next() && rs.getBoolean("temporary").get()));
+                  for (long rowId = 0; rowId < 5; rowId += 2) {
+                    appender.beginRow();
+                    appender.append(rowId);
+                    appender.append(rowId * 10d);
+                    appender.append(rowId + 0.5);
+                    appender.endRow();
+                  }
+                });
+
+    assertThat(count).isEqualTo(3);
+    assertThat(temporary).containsExactly(true);
+    assertThat(
+            db.template()
+                .queryString(
+                    c ->
+                        c.sql(
+                            "select string_agg(coalesce(x::varchar, '-') || '/'"
+                                + " || coalesce(y::varchar, '-'), ',' order by id) from test")))
+        .isEqualTo("0.0/0.5,-/-,20.0/2.5,-/-,40.0/4.5");
+
+    // the staging table is dropped
+    assertThat(
+            db.template()
+                .queryInt(
+                    c ->
+                        c.sql(
+                            "select count(*) from duckdb_tables()"
+                                + " where table_name like 'stage_%'")))
+        .isEqualTo(0);
+  }
 }
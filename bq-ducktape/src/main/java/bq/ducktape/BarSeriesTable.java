@@ -3,18 +3,19 @@ package bq.ducktape;
 import bq.duckdb.DuckDb;
 import bq.duckdb.DuckTable;
 import bq.util.S;
-import bq.util.ta4j.Bars;
+import bq.util.ta4j.ColumnarBarSeries;
 import bq.util.ta4j.ImmutableBar;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.flogger.FluentLogger;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicLong;
-import org.ta4j.core.Bar;
 import org.ta4j.core.Indicator;
 import org.ta4j.core.num.Num;
 
@@ -30,6 +31,9 @@ public class BarSeriesTable {
 
   String barSeriesName;
 
+  // incremented on reload() so that cached column values can be invalidated
+  long version;
+
   private BarSeriesTable() {
     super();
   }
@@ -45,9 +49,14 @@ public class BarSeriesTable {
 
   public BarSeriesTable reload() {
     this.barSeries = selectBarSeries();
+    this.version++;
     return this;
   }
 
+  long getVersion() {
+    return version;
+  }
+
   public DuckBarSeries getBarSeries() {
     return this.barSeries;
   }
@@ -56,45 +65,49 @@ public class BarSeriesTable {
     return this.table.getTableName();
   }
 
-  static Bar toDuckBar(ResultSet row) throws SQLException {
-
-    java.sql.Date date = row.getDate("date");
-
-    LocalDate ld = date.toLocalDate();
-
-    long rowId = row.getLong("rowid");
-    Double open = row.getObject("open") != null ? row.getDouble("open") : null;
-    Double high = row.getObject("high") != null ? row.getDouble("high") : null;
-    Double low = row.getObject("low") != null ? row.getDouble("low") : null;
-    Double close = row.getObject("close") != null ? row.getDouble("close") : null;
-    Double volume = row.getObject("volume") != null ? row.getDouble("volume") : null;
-
-    return ImmutableBar.create(ld, open, high, low, close, volume, rowId);
-  }
-
   private DuckBarSeries selectBarSeries() {
 
     // the third argument is the BarSeries name NOT the table name
-    return DuckBarSeries.create(this, selectBars(), barSeriesName);
+    return DuckBarSeries.create(this, selectColumns(), barSeriesName);
   }
 
-  List<Bar> selectBars() {
+  /**
+   * Reads the OHLCV columns straight into primitive arrays. NULL values are stored as NaN. The date
+   * is converted to an epoch day in SQL so that no per-row date objects are created.
+   */
+  ColumnarBarSeries selectColumns() {
 
-    String sql = "select rowid,date,open,high,low,close,volume from ##table## order by date asc";
-    var bars =
-        getDb()
-            .template()
-            .query(
-                c -> {
-                  c.sql(sql);
-                  c.bind("table", getTableName());
-                },
-                rs -> {
-                  return toDuckBar(rs.getResultSet());
-                })
-            .toList();
+    String sql =
+        "select rowid, datediff('day', DATE '1970-01-01', date::DATE) as epoch_day,"
+            + " open, high, low, close, volume from ##table## order by date asc";
+
+    return getDb()
+        .template()
+        .queryResult(
+            c -> {
+              c.sql(sql);
+              c.bind("table", getTableName());
+            },
+            rs -> {
+              ResultSet r = rs.getResultSet();
+              ColumnarBarSeries.Builder b = ColumnarBarSeries.newBuilder();
+              while (r.next()) {
+                long rowId = r.getLong(1);
+                long epochDay = r.getLong(2);
+                double open = getDouble(r, 3);
+                double high = getDouble(r, 4);
+                double low = getDouble(r, 5);
+                double close = getDouble(r, 6);
+                double volume = getDouble(r, 7);
+                b.add(epochDay, open, high, low, close, volume, rowId);
+              }
+              return b.build(barSeriesName);
+            });
+  }
 
-    return bars;
+  private static double getDouble(ResultSet r, int column) throws SQLException {
+    double d = r.getDouble(column);
+    return r.wasNull() ? Double.NaN : d;
   }
 
   class Updatex {
@@ -154,7 +167,7 @@ public class BarSeriesTable {
 
   public Indicator<Num> getIndicator(String column) {
 
-    return new DuckColumnIndicator(barSeries, sanitizeColumn(column));
+    return new DuckColumnIndicator(this, sanitizeColumn(column));
   }
 
   public long addIndicator(String expression, String column) {
@@ -183,6 +196,27 @@ public class BarSeriesTable {
     return addIndicator(t, column);
   }
 
+  /**
+   * Computes several expressions in a single pass over the bars and writes all of the resulting
+   * columns with one bulk update. Expressions may only reference columns that already exist.
+   *
+   * @param expressions expressions of the form "sma(close,20) as sma20"
+   * @return number of rows written
+   */
+  public long addIndicators(String... expressions) {
+    Preconditions.checkNotNull(expressions);
+    Map<String, Indicator<?>> indicators = Maps.newLinkedHashMap();
+    for (String expression : expressions) {
+      IndicatorExpression exp = IndicatorExpression.parse(expression);
+      String column = exp.getOutputName().orElse(exp.getFunctionName());
+
+      Indicator<Num> t =
+          IndicatorBuilder.newBuilder().table(getBarSeries().table).expression(exp).build();
+      indicators.put(column, t);
+    }
+    return addIndicators(indicators);
+  }
+
   private Optional<Num> getNum(Indicator t, int i) {
     try {
       Object val = t.getValue(i);
@@ -201,24 +235,66 @@ public class BarSeriesTable {
   public long addIndicator(Indicator<?> indicator, String name) {
 
     Preconditions.checkNotNull(indicator);
-    addDoubleColumn(name);
-    DuckBarSeries bs = (DuckBarSeries) indicator.getBarSeries();
+    return addIndicators(Map.of(name, indicator));
+  }
 
-    AtomicLong count = new AtomicLong();
-    Bars.itemList(bs)
-        .forEach(
-            t -> {
+  /**
+   * Computes each indicator and writes it to its column (keyed by column name). Values are staged
+   * with the DuckDB appender and applied in a single UPDATE rather than one UPDATE per bar.
+   *
+   * @param indicators column name to indicator
+   * @return number of rows written
+   */
+  public long addIndicators(Map<String, ? extends Indicator<?>> indicators) {
+    Preconditions.checkNotNull(indicators);
+    if (indicators.isEmpty()) {
+      return 0;
+    }
 
-              //  The bar index (t.index()) and the DuckDb rowId (bar.getId())
-              //  have nothing to do with each other, even though they may be the same in
-              //  many trivial cases.
-              Num num = getNum(indicator, t.index()).orElse(null);
+    List<String> columns = Lists.newArrayList();
+    List<Indicator<?>> list = Lists.newArrayList();
+    DuckBarSeries bs = null;
+    for (Map.Entry<String, ? extends Indicator<?>> entry : indicators.entrySet()) {
+      Indicator<?> indicator = entry.getValue();
+      Preconditions.checkNotNull(indicator);
+      if (bs == null) {
+        bs = (DuckBarSeries) indicator.getBarSeries();
+      }
+      Preconditions.checkArgument(
+          indicator.getBarSeries() == bs, "indicators must share the same BarSeries");
 
-              ImmutableBar bar = (ImmutableBar) t.get();
+      String name = sanitizeColumn(entry.getKey());
+      addDoubleColumn(name);
+      columns.add(name);
+      list.add(indicator);
+    }
 
-              long rowId = bar.getId().get();
-              updateRow(rowId, name, num);
-              count.incrementAndGet();
+    final DuckBarSeries series = bs;
+    AtomicLong count = new AtomicLong();
+    getTable()
+        .updateByRowId(
+            columns,
+            appender -> {
+              for (int i = series.getBeginIndex(); i <= series.getEndIndex(); i++) {
+
+                //  The bar index (i) and the DuckDb rowId (bar.getId())
+                //  have nothing to do with each other, even though they may be the same in
+                //  many trivial cases.
+                ImmutableBar bar = (ImmutableBar) series.getBar(i);
+
+                appender.beginRow();
+                appender.append(bar.getId().get());
+                for (Indicator<?> indicator : list) {
+                  Num num = getNum(indicator, i).orElse(null);
+                  if (num == null) {
+                    appender.appendNull();
+                  } else {
+                    appender.append(num.doubleValue());
+                  }
+                }
+                appender.endRow();
+                count.incrementAndGet();
+              }
             });
 
     return count.get();
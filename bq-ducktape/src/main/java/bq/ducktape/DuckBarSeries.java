@@ -1,26 +1,24 @@
 package bq.ducktape;
 
-import bq.util.ta4j.ImmutableBarSeries;
+import bq.util.ta4j.ColumnarBarSeries;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.MoreObjects.ToStringHelper;
 import java.time.temporal.ChronoUnit;
-import java.util.List;
-import org.ta4j.core.Bar;
 
-public class DuckBarSeries extends ImmutableBarSeries {
+public class DuckBarSeries extends ColumnarBarSeries {
 
   private static final long serialVersionUID = 1L;
 
   BarSeriesTable table;
 
-  DuckBarSeries(BarSeriesTable table, List<Bar> bars, String name) {
+  DuckBarSeries(BarSeriesTable table, ColumnarBarSeries columns, String name) {
 
-    super(bars, name);
+    super(columns, name);
     this.table = table;
   }
 
-  static DuckBarSeries create(BarSeriesTable table, List<Bar> bars, String seriesName) {
-    return new DuckBarSeries(table, bars, seriesName);
+  static DuckBarSeries create(BarSeriesTable table, ColumnarBarSeries columns, String seriesName) {
+    return new DuckBarSeries(table, columns, seriesName);
   }
 
   public String toString() {
@@ -2,14 +2,13 @@ package bq.ducktape;
 
 import bq.sql.DbException;
 import bq.sql.SqlCloser;
-import bq.util.ta4j.ImmutableBar;
 import com.google.common.base.MoreObjects;
-import com.google.common.collect.Maps;
+import com.google.common.base.Preconditions;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Map;
+import java.util.BitSet;
 import org.ta4j.core.BarSeries;
 import org.ta4j.core.Indicator;
 import org.ta4j.core.num.DoubleNum;
@@ -17,61 +16,76 @@ import org.ta4j.core.num.Num;
 
 public class DuckColumnIndicator implements Indicator<Num> {
 
-  DuckBarSeries barSeries;
+  BarSeriesTable table;
   String column;
 
-  Map<Long, Num> cachedValues = null;
+  // index-aligned with the table's bar series, refetched when the table is reloaded
+  double[] values = null;
+  BitSet present = null;
+  long version = -1;
 
-  DuckColumnIndicator(DuckBarSeries bs, String column) {
-    this.barSeries = bs;
+  DuckColumnIndicator(BarSeriesTable table, String column) {
+    this.table = table;
     this.column = BarSeriesTable.sanitizeColumn(column);
   }
 
   @Override
   public Num getValue(int index) {
 
-    if (cachedValues == null) {
+    if (values == null || version != table.getVersion()) {
       fetchValues();
     }
-    // 1. look up the bar in the driving BarSeries
-    // 2. this will have the DuckDB rowId, which we'll use to get the data
-    ImmutableBar bar = (ImmutableBar) barSeries.getBar(index);
-    if (bar == null) {
+    Preconditions.checkElementIndex(index, values.length);
+    if (!present.get(index)) {
       return null;
     }
-
-    long rowId = bar.getId().get();
-    Num num = cachedValues.get(rowId);
-    return num;
+    return DoubleNum.valueOf(values[index]);
   }
 
   private void fetchValues() {
     // IMPORTANT - The TA4J Indicator object model uses the bar index to get the indicator
     // value.
-    // We need to load the appropriate column into memory and store the DuckDB rowid->Num
-    // mappings.
-    // This can then be used in a two-stage lookup operation in getValue().
-
-    Map<Long, Num> rowIdMap = Maps.newHashMap();
+    // Both the driving BarSeries and the query are ordered by date, so we can walk them together
+    // and store the column in an array that is aligned with the bar index.
+
+    long currentVersion = table.getVersion();
+    DuckBarSeries series = table.getBarSeries();
+    int count = series.getBarCount();
+    double[] vals = new double[count];
+    BitSet bits = new BitSet(count);
     try (SqlCloser closer = SqlCloser.create()) {
-      Connection c = barSeries.getTable().getDb().getConnection();
+      Connection c = table.getDb().getConnection();
       closer.register(c);
 
       Statement st = c.createStatement();
       closer.register(st);
       String sql =
-          String.format("select rowid, %s from %s", column, barSeries.table.getTableName());
+          String.format(
+              "select datediff('day', DATE '1970-01-01', date::DATE) as epoch_day, %s from %s"
+                  + " order by date asc",
+              column, table.getTableName());
 
       ResultSet rs = st.executeQuery(sql);
       closer.register(rs);
-      while (rs.next()) {
-        long row = rs.getLong("rowid");
-        double val = rs.getDouble(2);
-        if (!rs.wasNull()) {
-          rowIdMap.put(row, DoubleNum.valueOf(val));
+      int i = 0;
+      while (rs.next() && i < count) {
+        long day = rs.getLong(1);
+        // the table may have rows that the series does not, or vice versa
+        while (i < count && series.getEpochDay(i) < day) {
+          i++;
+        }
+        if (i < count && series.getEpochDay(i) == day) {
+          double val = rs.getDouble(2);
+          if (!rs.wasNull()) {
+            vals[i] = val;
+            bits.set(i);
+          }
+          i++;
         }
       }
-      this.cachedValues = rowIdMap;
+      this.values = vals;
+      this.present = bits;
+      this.version = currentVersion;
 
     } catch (SQLException e) {
       throw new DbException(e);
@@ -85,7 +99,7 @@ public class DuckColumnIndicator implements Indicator<Num> {
 
   @Override
   public BarSeries getBarSeries() {
-    return barSeries;
+    return table.getBarSeries();
   }
 
   public String toString() {
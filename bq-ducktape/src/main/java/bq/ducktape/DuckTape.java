@@ -157,22 +157,22 @@ public class DuckTape {
         .table(table.getTableName())
         .append(
             appender -> {
-              Bars.toStream(barSeries)
-                  .forEach(
-                      bar -> {
-                        try {
-                          appender.beginRow();
-                          appender.appendLocalDateTime(bar.getBeginTime().toLocalDateTime());
-                          appender.append(Nums.asDouble(bar.getOpenPrice()).orElse(null));
-                          appender.append(Nums.asDouble(bar.getHighPrice()).orElse(null));
-                          appender.append(Nums.asDouble(bar.getLowPrice()).orElse(null));
-                          appender.append(Nums.asDouble(bar.getClosePrice()).orElse(null));
-                          appender.append(Nums.asDouble(bar.getVolume()).orElse(null));
-                          appender.endRow();
-                        } catch (SQLException e) {
-                          throw new BqException(e);
-                        }
-                      });
+              Bars.forEach(
+                  barSeries,
+                  (bar, i) -> {
+                    try {
+                      appender.beginRow();
+                      appender.appendLocalDateTime(bar.getBeginTime().toLocalDateTime());
+                      appender.append(Nums.asDouble(bar.getOpenPrice()).orElse(null));
+                      appender.append(Nums.asDouble(bar.getHighPrice()).orElse(null));
+                      appender.append(Nums.asDouble(bar.getLowPrice()).orElse(null));
+                      appender.append(Nums.asDouble(bar.getClosePrice()).orElse(null));
+                      appender.append(Nums.asDouble(bar.getVolume()).orElse(null));
+                      appender.endRow();
+                    } catch (SQLException e) {
+                      throw new BqException(e);
+                    }
+                  });
             });
   }
 
@@ -1,14 +1,20 @@
 package bq.ducktape;
 
-import bq.util.BqException;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Ints;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.ta4j.core.BarSeries;
 import org.ta4j.core.Indicator;
 import org.ta4j.core.indicators.helpers.ClosePriceIndicator;
@@ -133,132 +139,237 @@ public class IndicatorBuilder {
     return output;
   }
 
-  <T extends Indicator> T build() {
+  // argument shapes, used to select constructors without trial parsing
+  static final int SHAPE_COLUMN = 1;
+  static final int SHAPE_INT = 2;
+  static final int SHAPE_DOUBLE = 4;
 
-    RuntimeException lastException = null;
+  // constructors that can accept a given (indicatorClass, argument shapes), in declared order
+  static final Map<PlanKey, List<Plan>> plans = new ConcurrentHashMap<>();
 
-    if (expression != null) {
+  static final class PlanKey {
+    final Class<?> indicatorClass;
+    final int[] shapes;
 
-      indicatorClass = expression.getIndicatorClass();
-      args = expression.getArgs();
+    PlanKey(Class<?> indicatorClass, int[] shapes) {
+      this.indicatorClass = indicatorClass;
+      this.shapes = shapes;
     }
 
-    List<Constructor> ctors = Lists.newArrayList(indicatorClass.getDeclaredConstructors());
-
-    for (Constructor ctor : ctors) {
-
-      try {
-        // arity check will help filter constructors
-        if (ctor.getParameterCount() < args.size()) {
-          // if we have more parameters on the constructor than we have supplied
-          // there is no way that the it can match
-        } else if (ctor.getParameterCount() > args.size() + 1) {
-          // THis one is tricky. If the arity matches, we need to evaluate.
-          // If the supplied parameters is one LESS than the constructor count, we also
-          // need to
-          // match. This is due to the fact that BarSeries and Indicator can be implicit
-          // in some
-          // cases.
-        } else {
-
-          logger.atFiner().log(
-              "trying to build %s using %s with %s", indicatorClass.getSimpleName(), ctor, args);
-          Indicator indicator = build(ctor);
-          if (indicator != null) {
-            return (T) indicator;
-          }
-        }
-      } catch (RuntimeException e) {
-        lastException = e;
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof PlanKey)) {
+        return false;
       }
+      PlanKey k = (PlanKey) o;
+      return k.indicatorClass == indicatorClass && Arrays.equals(k.shapes, shapes);
     }
 
-    if (lastException != null) {
-      throw lastException;
+    @Override
+    public int hashCode() {
+      return 31 * indicatorClass.hashCode() + Arrays.hashCode(shapes);
     }
-    throw new InvalidExpressionException(
-        expression,
-        "could not build Indicator: " + ((expression != null) ? expression : indicatorClass));
   }
 
-  Indicator build(Constructor<Indicator> ctor) {
-
-    Preconditions.checkNotNull(ctor);
+  enum Source {
+    BAR_SERIES,
+    CLOSE_PRICE,
+    COLUMN,
+    VALUE
+  }
 
-    Class<?>[] ptypes = ctor.getParameterTypes();
-    List<Object> ctorArgs = Lists.newArrayList();
-    List<String> args = Lists.newArrayList(this.args); // make a mutable copy
+  /** A constructor along with where each of its arguments comes from. */
+  static final class Plan {
+    Constructor<?> ctor;
+    MethodHandle handle;
+    Source[] sources;
+    // index into the supplied args for COLUMN and VALUE
+    int[] argIndex;
+    Class<?>[] types;
+
+    public String toString() {
+      return ctor.toString();
+    }
+  }
 
-    if (ptypes == null || ptypes.length == 0) {
+  static int shape(String arg) {
+    int shape = 0;
+    if (arg.length() > 0 && (Character.isLetter(arg.charAt(0)) || arg.charAt(0) == '_')) {
+      shape |= SHAPE_COLUMN;
+    }
+    if (Ints.tryParse(arg.startsWith("+") ? arg.substring(1) : arg) != null) {
+      shape |= SHAPE_INT;
+    }
+    if (Doubles.tryParse(arg) != null) {
+      shape |= SHAPE_DOUBLE;
+    }
+    return shape;
+  }
 
-      throw new BqException("no-arg constructors not allowed");
+  static boolean accepts(Class<?> type, int shape) {
+    if (type == int.class) {
+      return (shape & SHAPE_INT) != 0;
+    } else if (type == double.class
+        || type == Double.class
+        || type == Number.class
+        || type == Num.class) {
+      return (shape & SHAPE_DOUBLE) != 0;
+    } else if (type == Boolean.class || type == boolean.class || type == TimeLevel.class) {
+      // any arg is tried, so that cast() reports an invalid TimeLevel
+      return true;
     }
-    if (Modifier.isAbstract(ctor.getModifiers())) {
-      throw new BqException("abstract constructors not allowed");
+    return false;
+  }
+
+  /**
+   * Returns the constructors that can accept arguments of the given shapes. This mirrors the
+   * matching that build() used to do by trial and error, but is evaluated once per key.
+   */
+  static List<Plan> plan(Class<?> indicatorClass, int[] shapes) {
+    return plans.computeIfAbsent(
+        new PlanKey(indicatorClass, shapes), k -> resolvePlans(indicatorClass, shapes));
+  }
+
+  private static List<Plan> resolvePlans(Class<?> indicatorClass, int[] shapes) {
+    List<Plan> result = Lists.newArrayList();
+    for (Constructor<?> ctor : indicatorClass.getDeclaredConstructors()) {
+      // the constructor may take one more parameter than supplied args, since BarSeries and
+      // Indicator can be implicit
+      int count = ctor.getParameterCount();
+      if (count == 0 || count < shapes.length || count > shapes.length + 1) {
+        continue;
+      }
+      if (!Modifier.isPublic(ctor.getModifiers())
+          || !Modifier.isPublic(indicatorClass.getModifiers())) {
+        continue;
+      }
+      Plan plan = resolvePlan(ctor, shapes);
+      if (plan != null) {
+        result.add(plan);
+      }
     }
+    logger.atFine().log(
+        "%s with %s matches %s", indicatorClass.getSimpleName(), Arrays.toString(shapes), result);
+    return List.copyOf(result);
+  }
 
-    for (int i = 0; ptypes != null && i < ptypes.length; i++) {
+  private static Plan resolvePlan(Constructor<?> ctor, int[] shapes) {
+    Class<?>[] ptypes = ctor.getParameterTypes();
+    Plan plan = new Plan();
+    plan.ctor = ctor;
+    plan.types = ptypes;
+    plan.sources = new Source[ptypes.length];
+    plan.argIndex = new int[ptypes.length];
+
+    int next = 0;
+    for (int i = 0; i < ptypes.length; i++) {
       Class<?> type = ptypes[i];
-      String arg = args.isEmpty() ? null : args.getFirst();
+      int shape = next < shapes.length ? shapes[next] : -1;
+      plan.argIndex[i] = -1;
       if (BarSeries.class.equals(type)) {
-
         // bar series is always implicit, does not require an arg
-        Preconditions.checkState(barSeries != null, "BarSeries not set");
-        logger.atFiner().log("#%s: %s", i, barSeries);
-        ctorArgs.add(barSeries);
-
+        plan.sources[i] = Source.BAR_SERIES;
       } else if (Indicator.class.equals(type)) {
-        if (arg != null
-            && arg.length() > 0
-            && (Character.isLetter(arg.charAt(0)) || arg.charAt(0) == '_')) {
-          // the arg looks like an indicator column
-          Preconditions.checkState(table != null, "table must be set");
-          Indicator indicator = table.getIndicator(arg);
-          logger.atFiner().log("#%s: %s", i, indicator);
-          ctorArgs.add(indicator);
-          args.removeFirst(); // we just consumed an argument
+        if (shape >= 0 && (shape & SHAPE_COLUMN) != 0) {
+          plan.sources[i] = Source.COLUMN;
+          plan.argIndex[i] = next++;
+        } else if (i == 0) {
+          // if the first indicator is not given, assume ClosePriceIndicator
+          plan.sources[i] = Source.CLOSE_PRICE;
         } else {
-          // we weren't given a column, but if we're in the first column, we can make an
-          // assumption that
-          // ClosePriceIndicator is used;
-          if (i != 0) {
-            throw new BqException("when more than one indicator is required it must be explicit");
-          }
-          if (closePriceIndicator == null) {
-            closePriceIndicator = new ClosePriceIndicator(barSeries);
-          }
-          logger.atFiner().log("#%s: %s (implicit)", i, closePriceIndicator);
-          ctorArgs.add(closePriceIndicator);
-
-          // we did NOT consume an arg
+          // when more than one indicator is required it must be explicit
+          return null;
         }
+      } else if (shape >= 0 && accepts(type, shape)) {
+        plan.sources[i] = Source.VALUE;
+        plan.argIndex[i] = next++;
       } else {
+        return null;
+      }
+    }
+    if (next != shapes.length) {
+      return null;
+    }
+    try {
+      plan.handle =
+          MethodHandles.publicLookup()
+              .unreflectConstructor(ctor)
+              .asSpreader(Object[].class, ptypes.length)
+              .asType(MethodType.methodType(Object.class, Object[].class));
+    } catch (IllegalAccessException e) {
+      logger.atFine().withCause(e).log("cannot access %s", ctor);
+      return null;
+    }
+    return plan;
+  }
 
-        if (args.isEmpty()) {
+  <T extends Indicator> T build() {
 
-          throw new InvalidExpressionException(expression, "arg underflow building");
-        }
-        Object val = cast(arg, type);
-        ctorArgs.add(val);
-        logger.atFiner().log("#%s: %s", i, val);
-        args.removeFirst();
-      }
+    if (expression != null) {
+
+      indicatorClass = expression.getIndicatorClass();
+      args = expression.getArgs();
     }
 
-    if (!args.isEmpty()) {
+    int[] shapes = new int[args.size()];
+    for (int i = 0; i < shapes.length; i++) {
+      shapes[i] = shape(args.get(i));
+    }
 
-      throw new InvalidExpressionException(expression, "arg underflow");
+    RuntimeException lastException = null;
+    for (Plan plan : plan(indicatorClass, shapes)) {
+      try {
+        logger.atFiner().log(
+            "building %s using %s with %s", indicatorClass.getSimpleName(), plan.ctor, args);
+        return (T) build(plan);
+      } catch (RuntimeException e) {
+        // the arguments fit, but the constructor itself failed
+        lastException = e;
+      }
     }
 
-    if (ctorArgs.size() != ptypes.length) {
-      throw new InvalidExpressionException(
-          expression, "expected " + ptypes.length + " got " + ctorArgs.size());
+    if (lastException != null) {
+      throw lastException;
+    }
+    throw new InvalidExpressionException(
+        expression,
+        "could not build Indicator: " + ((expression != null) ? expression : indicatorClass));
+  }
+
+  Indicator build(Plan plan) {
+
+    Object[] ctorArgs = new Object[plan.sources.length];
+    for (int i = 0; i < ctorArgs.length; i++) {
+      switch (plan.sources[i]) {
+        case BAR_SERIES:
+          Preconditions.checkState(barSeries != null, "BarSeries not set");
+          ctorArgs[i] = barSeries;
+          break;
+        case CLOSE_PRICE:
+          if (closePriceIndicator == null) {
+            closePriceIndicator = new ClosePriceIndicator(barSeries);
+          }
+          ctorArgs[i] = closePriceIndicator;
+          break;
+        case COLUMN:
+          Preconditions.checkState(table != null, "table must be set");
+          ctorArgs[i] = table.getIndicator(args.get(plan.argIndex[i]));
+          break;
+        case VALUE:
+          ctorArgs[i] = cast(args.get(plan.argIndex[i]), plan.types[i]);
+          break;
+      }
+      logger.atFiner().log("#%s: %s", i, ctorArgs[i]);
     }
 
     try {
-      this.constructorUsed = ctor;
-      return ctor.newInstance(ctorArgs.toArray());
-    } catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
+      this.constructorUsed = plan.ctor;
+      // invokeExact requires the call site to match the handle type (Object[])Object
+      Object indicator = (Object) plan.handle.invokeExact(ctorArgs);
+      return (Indicator) indicator;
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
       throw new IndicatorExecutionException(expression, "constructor failed", e);
     }
   }
@@ -0,0 +1,241 @@
+package bq.ducktape;
+
+import bq.util.BqException;
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import com.google.common.flogger.FluentLogger;
+import io.github.classgraph.ClassGraph;
+import io.github.classgraph.ClassInfo;
+import io.github.classgraph.ScanResult;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.ta4j.core.Indicator;
+
+/**
+ * Index of Indicator implementations keyed by function name. It is generated at build time by
+ * {@link #main(String[])} and packaged as {@value #RESOURCE}, so that IndicatorRegistry can be
+ * populated without scanning the classpath or loading every indicator class. Every jar may carry
+ * its own index; all of them are merged by {@link #load(ClassLoader)}.
+ *
+ * <p>Each line holds the function name, class name and the parameter types of each declared
+ * constructor, tab separated:
+ *
+ * <pre>
+ * sma	org.ta4j.core.indicators.SMAIndicator	org.ta4j.core.Indicator,int
+ * </pre>
+ */
+public class IndicatorIndex {
+
+  static FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  public static final String RESOURCE = "META-INF/bq/indicators.idx";
+
+  Map<String, Entry> entries = Maps.newTreeMap();
+
+  public static class Entry {
+    String functionName;
+    String className;
+    List<List<String>> constructors;
+
+    public String getFunctionName() {
+      return functionName;
+    }
+
+    public String getClassName() {
+      return className;
+    }
+
+    /** Parameter type names of each declared constructor. */
+    public List<List<String>> getConstructors() {
+      return constructors;
+    }
+
+    public String toString() {
+      return MoreObjects.toStringHelper("Entry")
+          .add("functionName", functionName)
+          .add("className", className)
+          .toString();
+    }
+  }
+
+  public static IndicatorIndex create() {
+    return new IndicatorIndex();
+  }
+
+  public Map<String, Entry> getEntries() {
+    return Map.copyOf(entries);
+  }
+
+  public Optional<Entry> get(String functionName) {
+    return Optional.ofNullable(entries.get(functionName));
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /** Loads and merges every {@value #RESOURCE} visible to the class loader. */
+  public static IndicatorIndex load(ClassLoader loader) {
+    IndicatorIndex index = create();
+    try {
+      Enumeration<URL> urls = loader.getResources(RESOURCE);
+      while (urls.hasMoreElements()) {
+        URL url = urls.nextElement();
+        try (InputStream in = url.openStream()) {
+          index.read(in);
+        }
+        logger.atFine().log("loaded %s", url);
+      }
+    } catch (IOException e) {
+      throw new BqException(e);
+    }
+    return index;
+  }
+
+  void read(InputStream in) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.isBlank() || line.startsWith("#")) {
+        continue;
+      }
+      List<String> fields = Splitter.on('\t').splitToList(line);
+      if (fields.size() < 2) {
+        logger.atWarning().log("invalid index line: %s", line);
+        continue;
+      }
+      Entry entry = new Entry();
+      entry.functionName = fields.get(0);
+      entry.className = fields.get(1);
+      entry.constructors =
+          fields.subList(2, fields.size()).stream()
+              .map(it -> it.isEmpty() ? List.<String>of() : Splitter.on(',').splitToList(it))
+              .toList();
+      entries.put(entry.functionName, entry);
+    }
+  }
+
+  public void write(Writer writer) throws IOException {
+    writer.write("# generated by " + IndicatorIndex.class.getName() + "\n");
+    for (Entry entry : entries.values()) {
+      writer.write(entry.functionName);
+      writer.write('\t');
+      writer.write(entry.className);
+      for (List<String> params : entry.constructors) {
+        writer.write('\t');
+        writer.write(Joiner.on(',').join(params));
+      }
+      writer.write('\n');
+    }
+  }
+
+  /**
+   * Scans packages with ClassGraph. This is what the build does to generate the index, and what
+   * IndicatorRegistry falls back to for packages that do not ship one.
+   */
+  public static IndicatorIndex scan(String... packages) {
+    IndicatorIndex index = create();
+    try (ScanResult result =
+        new ClassGraph().verbose(false).enableClassInfo().acceptPackages(packages).scan()) {
+      for (ClassInfo classInfo : result.getClassesImplementing(Indicator.class)) {
+        index.add(classInfo.getName());
+      }
+    }
+    return index;
+  }
+
+  void add(String className) {
+    try {
+      Class<?> x = Class.forName(className);
+      if (x.isInterface()
+          || Modifier.isAbstract(x.getModifiers())
+          || x.getName().contains("$")
+          || !hasPublicConstructor(x)) {
+        logger.atFiner().log("ignoring interface/abstract/inner class: %s", x);
+        return;
+      }
+      Entry entry = new Entry();
+      entry.functionName = toFunctionName(x);
+      entry.className = x.getName();
+      entry.constructors =
+          Arrays.stream(x.getDeclaredConstructors())
+              .map(ctor -> Arrays.stream(ctor.getParameterTypes()).map(Class::getName).toList())
+              .toList();
+      entries.put(entry.functionName, entry);
+    } catch (RuntimeException | ClassNotFoundException | LinkageError e) {
+      logger.atFine().withCause(e).log("could not index %s", className);
+    }
+  }
+
+  private static boolean hasPublicConstructor(Class<?> c) {
+    for (Constructor<?> ctor : c.getDeclaredConstructors()) {
+      if (Modifier.isPublic(ctor.getModifiers())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public static String toFunctionName(Class<?> x) {
+    String simple = x.getSimpleName();
+
+    simple = simple.replace("Indicator", "");
+
+    char[] array = simple.toCharArray();
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < array.length; i++) {
+      char c = array[i];
+      if (i == 0) {
+        sb.append(Character.toLowerCase(c));
+      } else {
+        char prev = array[i - 1];
+        if (Character.isLowerCase(prev) && Character.isUpperCase(c)) {
+          sb.append("_");
+        }
+        sb.append(Character.toLowerCase(c));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Generates the index for the build.
+   *
+   * <pre>
+   * IndicatorIndex &lt;outputDir&gt; &lt;package&gt;...
+   * </pre>
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      throw new IllegalArgumentException("usage: IndicatorIndex <outputDir> <package>...");
+    }
+    IndicatorIndex index = scan(Arrays.copyOfRange(args, 1, args.length));
+    File f = new File(args[0], RESOURCE);
+    f.getParentFile().mkdirs();
+    try (Writer w = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)) {
+      index.write(w);
+    }
+    logger.atInfo().log("wrote %s indicators to %s", index.size(), f);
+  }
+}
@@ -1,18 +1,19 @@
 package bq.ducktape;
 
+import bq.util.Config;
+import com.google.common.base.Splitter;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.flogger.FluentLogger;
-import io.github.classgraph.ClassGraph;
-import io.github.classgraph.ScanResult;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Modifier;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import org.ta4j.core.BarSeries;
 import org.ta4j.core.Indicator;
 import org.ta4j.core.indicators.helpers.BooleanTransformIndicator;
@@ -27,18 +28,46 @@ import org.ta4j.core.indicators.helpers.TransformIndicator;
 import org.ta4j.core.indicators.pivotpoints.TimeLevel;
 import org.ta4j.core.num.Num;
 
+/**
+ * Maps indicator function names to Indicator classes. Names are read from the {@link
+ * IndicatorIndex} resources generated at build time, and classes are only loaded when they are
+ * looked up. Packages that do not ship an index can be added with {@link #scanPackages} or the
+ * BQ_INDICATOR_PACKAGES setting, which fall back to a ClassGraph scan of just those packages.
+ */
 public class IndicatorRegistry {
 
   static FluentLogger logger = FluentLogger.forEnclosingClass();
   static IndicatorRegistry singleton;
 
-  private AtomicReference<Map<String, Class<? extends Indicator<?>>>> allIndicators =
-      new AtomicReference<>(Map.of());
+  static final String[] DEFAULT_PACKAGES = {"bq", "org.ta4j.core.indicators"};
 
-  private Supplier<Map<String, Class<? extends Indicator<?>>>> availableSupplier =
+  static final Set<Class> STANDARD_TYPES =
+      Set.of(
+          BarSeries.class,
+          int.class,
+          double.class,
+          boolean.class,
+          Number.class,
+          TimeLevel.class,
+          Double.class,
+          Boolean.class,
+          Num.class,
+          Indicator.class);
+
+  static final Set<String> STANDARD_TYPE_NAMES =
+      STANDARD_TYPES.stream().map(Class::getName).collect(Collectors.toSet());
+
+  private final Map<String, IndicatorIndex.Entry> index = new ConcurrentHashMap<>();
+
+  private final Map<String, Class<? extends Indicator<?>>> loaded = new ConcurrentHashMap<>();
+
+  private volatile Supplier<Map<String, Class<? extends Indicator<?>>>> allSupplier =
+      Suppliers.memoize(this::loadAllIndicators);
+
+  private volatile Supplier<Map<String, Class<? extends Indicator<?>>>> availableSupplier =
       Suppliers.memoize(this::filterAvailableIndicators);
 
-  private Set<Class> blacklist = buildBlacklist();
+  private Set<String> blacklist = buildBlacklist();
 
   public Map<String, Class<? extends Indicator<?>>> getAvailableIndicators() {
     return availableSupplier.get();
@@ -48,18 +77,22 @@ public class IndicatorRegistry {
 
     Map<String, Class<? extends Indicator<?>>> filtered = Maps.newHashMap();
 
-    allIndicators
-        .get()
-        .forEach(
-            (k, v) -> {
-              if (isAvailable(v)) {
-                filtered.put(k, v);
-              }
-            });
+    index.forEach(
+        (k, v) -> {
+          if (isAvailable(v)) {
+            loadClass(v).ifPresent(c -> filtered.put(k, c));
+          }
+        });
 
     return Map.copyOf(filtered);
   }
 
+  private Map<String, Class<? extends Indicator<?>>> loadAllIndicators() {
+    Map<String, Class<? extends Indicator<?>>> map = Maps.newHashMap();
+    index.forEach((k, v) -> loadClass(v).ifPresent(c -> map.put(k, c)));
+    return Map.copyOf(map);
+  }
+
   public static synchronized IndicatorRegistry getRegistry() {
     if (singleton == null) {
       singleton = new IndicatorRegistry();
@@ -69,86 +102,78 @@ public class IndicatorRegistry {
   }
 
   private void reload() {
-    ScanResult result =
-        new ClassGraph()
-            .verbose(false)
-            .enableAllInfo()
-            .acceptPackages("bq", "org.ta4j.core.indicators")
-            .scan();
-
-    Map<String, Class<? extends Indicator<?>>> map = Maps.newHashMap();
-    result
-        .getClassesImplementing(Indicator.class)
-        .forEach(
-            classInfo -> {
-              try {
-                String className = classInfo.getName();
-                Class x = (Class<? extends Indicator<?>>) Class.forName(className);
-
-                if (x.isInterface()
-                    || Modifier.isAbstract(x.getModifiers())
-                    || x.getName().contains("$")
-                    || !hasPublicConstructor(x)) {
-                  logger.atFiner().log("ignoring interface/abstract/inner class: %s", x);
-                } else {
-
-                  ;
-                  map.put(toFunctionName(x), x);
-                }
-
-              } catch (RuntimeException | ClassNotFoundException e) {
-                logger.atFine().withCause(e).log();
-              }
-            });
+    long t0 = System.currentTimeMillis();
+    IndicatorIndex packaged = IndicatorIndex.load(IndicatorRegistry.class.getClassLoader());
+    if (packaged.isEmpty()) {
+      // running from classes that were not built by maven, e.g. in an IDE
+      logger.atWarning().log("%s not found, scanning classpath", IndicatorIndex.RESOURCE);
+      packaged = IndicatorIndex.scan(DEFAULT_PACKAGES);
+    }
+    index.putAll(packaged.getEntries());
+    logger.atFine().log(
+        "loaded %s indicators in %sms", packaged.size(), System.currentTimeMillis() - t0);
+
+    Config.get("BQ_INDICATOR_PACKAGES")
+        .ifPresent(
+            it ->
+                scanPackages(
+                    Splitter.on(',')
+                        .trimResults()
+                        .omitEmptyStrings()
+                        .splitToList(it)
+                        .toArray(new String[0])));
+  }
 
-    this.allIndicators.set(Map.copyOf(map));
+  /**
+   * Adds the indicators in packages that are not covered by a packaged index. The packages are
+   * scanned with ClassGraph, so this should only be used for user-supplied indicators.
+   */
+  public synchronized IndicatorRegistry scanPackages(String... packages) {
+    if (packages == null || packages.length == 0) {
+      return this;
+    }
+    IndicatorIndex scanned = IndicatorIndex.scan(packages);
+    logger.atInfo().log("found %s indicators in %s", scanned.size(), List.of(packages));
+    index.putAll(scanned.getEntries());
+    allSupplier = Suppliers.memoize(this::loadAllIndicators);
+    availableSupplier = Suppliers.memoize(this::filterAvailableIndicators);
+    return this;
   }
 
   public Map<String, Class<? extends Indicator<?>>> getAllIndicators() {
-    return this.allIndicators.get();
+    return allSupplier.get();
   }
 
   public String toFunctionName(Class x) {
-    String simple = x.getSimpleName();
-
-    simple = simple.replace("Indicator", "");
-
-    char[] array = simple.toCharArray();
-    StringBuffer sb = new StringBuffer();
-
-    for (int i = 0; i < array.length; i++) {
-      char c = array[i];
-      if (i == 0) {
-        sb.append(Character.toLowerCase(c));
-      } else {
-        char prev = array[i - 1];
-        if (Character.isLowerCase(prev) && Character.isUpperCase(c)) {
-          sb.append("_");
-        }
-        sb.append(Character.toLowerCase(c));
-      }
-    }
-    return sb.toString();
+    return IndicatorIndex.toFunctionName(x);
   }
 
   public Optional<Class<? extends Indicator<?>>> getIndicatorClass(String name) {
-    Class<? extends Indicator<?>> x = this.getAvailableIndicators().get(name);
-    return Optional.ofNullable(x);
-  }
-
-  private boolean hasPublicConstructor(Class c) {
-
-    for (Constructor ctor : c.getDeclaredConstructors()) {
-
-      if (Modifier.isPublic(ctor.getModifiers())) {
-        return true;
-      }
+    if (name == null) {
+      return Optional.empty();
     }
-    return false;
+    IndicatorIndex.Entry entry = index.get(name);
+    if (entry == null || !isAvailable(entry)) {
+      return Optional.empty();
+    }
+    return loadClass(entry);
   }
 
   @SuppressWarnings("unchecked")
-  private void scanClassInfo(io.github.classgraph.ClassInfo info) {}
+  private Optional<Class<? extends Indicator<?>>> loadClass(IndicatorIndex.Entry entry) {
+    Class<? extends Indicator<?>> x = loaded.get(entry.getClassName());
+    if (x != null) {
+      return Optional.of(x);
+    }
+    try {
+      x = (Class<? extends Indicator<?>>) Class.forName(entry.getClassName());
+      loaded.put(entry.getClassName(), x);
+      return Optional.of(x);
+    } catch (RuntimeException | ClassNotFoundException | LinkageError e) {
+      logger.atFine().withCause(e).log("could not load %s", entry.getClassName());
+      return Optional.empty();
+    }
+  }
 
   static boolean hasStandardArgs(Class clazz) {
     for (Constructor ctor : clazz.getDeclaredConstructors()) {
@@ -168,11 +193,31 @@ public class IndicatorRegistry {
     return false;
   }
 
+  static boolean hasStandardArgs(IndicatorIndex.Entry entry) {
+    for (List<String> params : entry.getConstructors()) {
+      if (STANDARD_TYPE_NAMES.containsAll(params)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  boolean isAvailable(IndicatorIndex.Entry entry) {
+    if (!hasStandardArgs(entry)) {
+      return false;
+    }
+    if (blacklist.contains(entry.getClassName())) {
+      return false;
+    }
+
+    return true;
+  }
+
   boolean isAvailable(Class<? extends Indicator<?>> indicator) {
     if (!hasStandardArgs(indicator)) {
       return false;
     }
-    if (blacklist.contains(indicator)) {
+    if (blacklist.contains(indicator.getName())) {
       return false;
     }
 
@@ -182,20 +227,8 @@ public class IndicatorRegistry {
   static boolean hasStandardArgs(Constructor ctor) {
     Class[] ptypes = ctor.getParameterTypes();
 
-    Set<Class> standardTypes =
-        Set.of(
-            BarSeries.class,
-            int.class,
-            double.class,
-            boolean.class,
-            Number.class,
-            TimeLevel.class,
-            Double.class,
-            Boolean.class,
-            Num.class,
-            Indicator.class);
     for (int i = 0; i < ptypes.length; i++) {
-      if (!standardTypes.contains(ptypes[i])) {
+      if (!STANDARD_TYPES.contains(ptypes[i])) {
 
         return false;
       }
@@ -203,20 +236,19 @@ public class IndicatorRegistry {
     return true;
   }
 
-  private Set<Class> buildBlacklist() {
-    Set<Class> blacklist = Sets.newHashSet();
+  private Set<String> buildBlacklist() {
+    Set<String> blacklist = Sets.newHashSet();
 
     // There is nothing wrong with these indicators, but they can only be used programmatically.
-    blacklist.add(FixedDecimalIndicator.class);
-    blacklist.add(TransformIndicator.class);
-    blacklist.add(FixedIndicator.class);
-    blacklist.add(FixedDecimalIndicator.class);
-    blacklist.add(CombineIndicator.class);
-    blacklist.add(NumIndicator.class);
-    blacklist.add(ConstantIndicator.class);
-    blacklist.add(SumIndicator.class);
-    blacklist.add(FixedBooleanIndicator.class);
-    blacklist.add(BooleanTransformIndicator.class);
+    blacklist.add(FixedDecimalIndicator.class.getName());
+    blacklist.add(TransformIndicator.class.getName());
+    blacklist.add(FixedIndicator.class.getName());
+    blacklist.add(CombineIndicator.class.getName());
+    blacklist.add(NumIndicator.class.getName());
+    blacklist.add(ConstantIndicator.class.getName());
+    blacklist.add(SumIndicator.class.getName());
+    blacklist.add(FixedBooleanIndicator.class.getName());
+    blacklist.add(BooleanTransformIndicator.class.getName());
     return Set.copyOf(blacklist);
   }
 }
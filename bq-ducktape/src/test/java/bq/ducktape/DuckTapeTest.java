@@ -7,9 +7,11 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.time.temporal.ChronoUnit;
 import org.assertj.core.api.Assertions;
+import org.assertj.core.data.Offset;
 import org.junit.jupiter.api.Test;
 import org.ta4j.core.Bar;
 import org.ta4j.core.BarSeries;
+import org.ta4j.core.indicators.SMAIndicator;
 import org.ta4j.core.indicators.helpers.ClosePriceIndicator;
 import org.ta4j.core.num.Num;
 
@@ -130,6 +132,74 @@ public class DuckTapeTest extends BaseTest {
     tape().getDb().template().log().query("select date,close,sma,sma_50,sma_100 from btc");
   }
 
+  @Test
+  public void testAddIndicators() {
+    var table = tape().createOHLCVTable("bars");
+    db().template()
+        .execute(
+            "insert into bars select DATE '2020-01-01' + range::INT, 100 + sin(range / 10),"
+                + " 101 + sin(range / 10), 99 + sin(range / 10), 100 + sin(range / 7), 1000"
+                + " from range(200)");
+    table.reload();
+
+    long count = table.addIndicators("sma(20) as sma_20", "sma(50) as sma_50");
+    Assertions.assertThat(count).isEqualTo(table.getBarSeries().getBarCount());
+
+    table.reload();
+    BarSeries bs = table.getBarSeries();
+    var sma20 = table.getIndicator("sma_20");
+    var sma50 = table.getIndicator("sma_50");
+    var expected20 = new SMAIndicator(new ClosePriceIndicator(bs), 20);
+    var expected50 = new SMAIndicator(new ClosePriceIndicator(bs), 50);
+    for (int i = 60; i < bs.getBarCount(); i++) {
+      Assertions.assertThat(sma20.getValue(i).doubleValue())
+          .isCloseTo(expected20.getValue(i).doubleValue(), Offset.offset(0.0001));
+      Assertions.assertThat(sma50.getValue(i).doubleValue())
+          .isCloseTo(expected50.getValue(i).doubleValue(), Offset.offset(0.0001));
+    }
+  }
+
+  @Test
+  public void testColumnIndicatorReload() {
+    var table = tape().importTable("btc", BTC_URL);
+
+    BarSeries bs = table.getBarSeries();
+    var closeIndicator = table.getIndicator("close");
+    for (int i = 0; i < bs.getBarCount(); i++) {
+      Assertions.assertThat(closeIndicator.getValue(i).doubleValue())
+          .isEqualTo(bs.getBar(i).getClosePrice().doubleValue());
+    }
+
+    double close = bs.getLastBar().getClosePrice().doubleValue();
+    tape().getDb().template().execute("update btc set close=close*2");
+
+    // cached until the table is reloaded
+    Assertions.assertThat(closeIndicator.getValue(bs.getEndIndex()).doubleValue())
+        .isEqualTo(close);
+
+    table.reload();
+    Assertions.assertThat(closeIndicator.getValue(bs.getEndIndex()).doubleValue())
+        .isEqualTo(close * 2);
+
+    // a reload that adds a bar re-aligns the indicator with the new series
+    tape()
+        .getDb()
+        .template()
+        .execute("insert into btc (date, close) select max(date) + 1, 1.5 from btc");
+    table.reload();
+    int end = table.getBarSeries().getEndIndex();
+    Assertions.assertThat(end).isEqualTo(bs.getEndIndex() + 1);
+    Assertions.assertThat(closeIndicator.getBarSeries()).isSameAs(table.getBarSeries());
+    Assertions.assertThat(closeIndicator.getValue(end).doubleValue()).isEqualTo(1.5);
+
+    try {
+      closeIndicator.getValue(end + 1);
+      Assertions.failBecauseExceptionWasNotThrown(IndexOutOfBoundsException.class);
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
   @Test
   public void testInMemoryShared() throws SQLException {
     Assertions.assertThat(DuckTape.getSharedInMemory()).isSameAs(DuckTape.getSharedInMemory());
@@ -136,6 +136,49 @@ public class IndicatorBuilderTest {
     SMAIndicator sma = IndicatorBuilder.newBuilder().expression("sma(12)").table(btc).build();
   }
 
+  @Test
+  public void testShape() {
+    Assertions.assertThat(IndicatorBuilder.shape("close")).isEqualTo(IndicatorBuilder.SHAPE_COLUMN);
+    Assertions.assertThat(IndicatorBuilder.shape("12"))
+        .isEqualTo(IndicatorBuilder.SHAPE_INT | IndicatorBuilder.SHAPE_DOUBLE);
+    Assertions.assertThat(IndicatorBuilder.shape("+12"))
+        .isEqualTo(IndicatorBuilder.SHAPE_INT | IndicatorBuilder.SHAPE_DOUBLE);
+    Assertions.assertThat(IndicatorBuilder.shape("1.5")).isEqualTo(IndicatorBuilder.SHAPE_DOUBLE);
+    Assertions.assertThat(IndicatorBuilder.shape("day")).isEqualTo(IndicatorBuilder.SHAPE_COLUMN);
+  }
+
+  @Test
+  public void testInvalidTimeLevel() {
+    try {
+      IndicatorBuilder.newBuilder()
+          .indicator(DeMarkPivotPointIndicator.class)
+          .table(btc)
+          .args("fortnight")
+          .build();
+      Assertions.failBecauseExceptionWasNotThrown(InvalidExpressionException.class);
+    } catch (InvalidExpressionException e) {
+      Assertions.assertThat(e).hasMessageContaining("TimeLevel arg must be one of");
+    }
+  }
+
+  @Test
+  public void testPlanIsCached() {
+    IndicatorBuilder b1 = IndicatorBuilder.newBuilder().expression("sma(close,12)").table(btc);
+    SMAIndicator sma1 = b1.build();
+    IndicatorBuilder b2 = IndicatorBuilder.newBuilder().expression("sma(open,30)").table(btc);
+    SMAIndicator sma2 = b2.build();
+
+    Assertions.assertThat(sma2).isNotSameAs(sma1);
+    Assertions.assertThat(b2.getConstructorUsed()).isEqualTo(b1.getConstructorUsed());
+
+    int[] shapes = {IndicatorBuilder.SHAPE_COLUMN, IndicatorBuilder.shape("12")};
+    Assertions.assertThat(IndicatorBuilder.plan(SMAIndicator.class, shapes))
+        .isSameAs(IndicatorBuilder.plan(SMAIndicator.class, shapes.clone()));
+
+    // no constructor takes three args, and nothing is thrown while looking
+    Assertions.assertThat(IndicatorBuilder.plan(SMAIndicator.class, new int[] {1, 2, 2})).isEmpty();
+  }
+
   @Test
   public void testFisher() {
 
@@ -0,0 +1,47 @@
+package bq.ducktape;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ta4j.core.indicators.SMAIndicator;
+import org.ta4j.core.indicators.helpers.ClosePriceIndicator;
+
+public class IndicatorIndexTest {
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    IndicatorIndex index = IndicatorIndex.create();
+    index.add(SMAIndicator.class.getName());
+    index.add(ClosePriceIndicator.class.getName());
+    index.add("does.not.Exist");
+
+    Assertions.assertThat(index.getEntries().keySet())
+        .containsExactlyInAnyOrder("sma", "close_price");
+
+    StringWriter w = new StringWriter();
+    index.write(w);
+
+    IndicatorIndex copy = IndicatorIndex.create();
+    copy.read(new ByteArrayInputStream(w.toString().getBytes(StandardCharsets.UTF_8)));
+
+    IndicatorIndex.Entry sma = copy.get("sma").get();
+    Assertions.assertThat(sma.getClassName()).isEqualTo(SMAIndicator.class.getName());
+    Assertions.assertThat(sma.getConstructors())
+        .contains(List.of("org.ta4j.core.Indicator", "int"));
+    Assertions.assertThat(IndicatorRegistry.hasStandardArgs(sma)).isTrue();
+  }
+
+  @Test
+  public void testPackagedIndex() {
+    IndicatorRegistry registry = IndicatorRegistry.getRegistry();
+
+    Assertions.assertThat(registry.getIndicatorClass("sma")).contains(SMAIndicator.class);
+    Assertions.assertThat(registry.getIndicatorClass("fixed_decimal")).isEmpty();
+    Assertions.assertThat(registry.getIndicatorClass("no_such_thing")).isEmpty();
+    Assertions.assertThat(registry.getAvailableIndicators())
+        .containsEntry("sma", SMAIndicator.class);
+  }
+}
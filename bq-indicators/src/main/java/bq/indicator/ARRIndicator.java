@@ -1,12 +1,13 @@
 package bq.indicator;
 
 import bq.util.Zones;
+import bq.util.ta4j.EpochDayIndex;
 import com.google.common.flogger.FluentLogger;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Optional;
 import org.ta4j.core.Bar;
 import org.ta4j.core.BarSeries;
@@ -25,6 +26,11 @@ public class ARRIndicator extends AbstractIndicator<Num> {
   static FluentLogger logger = FluentLogger.forEnclosingClass();
   double years = 1;
 
+  EpochDayIndex dayIndex;
+
+  // ARR for every bar, computed on first use
+  double[] values;
+
   public ARRIndicator(BarSeries series) {
     this(series, 1);
   }
@@ -34,53 +40,71 @@ public class ARRIndicator extends AbstractIndicator<Num> {
     this.years = years;
   }
 
-  Optional<Bar> findFirstBarOnOrBefore(ZonedDateTime d) {
-    Bar last = null;
-    if (getBarSeries().getBarData() == null) {
-      return Optional.empty();
+  EpochDayIndex getIndex() {
+    if (dayIndex == null || dayIndex.size() != getBarSeries().getBarCount()) {
+      dayIndex = EpochDayIndex.of(getBarSeries());
     }
-    for (Bar b : getBarSeries().getBarData()) {
-      if (b.getBeginTime().isAfter(d)) {
+    return dayIndex;
+  }
 
-        return Optional.ofNullable(last);
-      }
-      if (b.getBeginTime().toEpochSecond() == d.toEpochSecond()) {
-        return Optional.of(b);
-      }
-      last = b;
+  Optional<Bar> findFirstBarOnOrBefore(ZonedDateTime d) {
+    if (getBarSeries() == null) {
+      return Optional.empty();
     }
-    return Optional.empty();
+    int i = getIndex().floorIndex(d.toLocalDate());
+    return i < 0 ? Optional.empty() : Optional.of(getBarSeries().getBar(i));
   }
 
   Optional<Bar> findFirstBarAfter(ZonedDateTime d) {
-
-    List<Bar> bars = getBarSeries().getBarData();
-    if (bars == null || bars.isEmpty()) {
+    if (getBarSeries() == null) {
       return Optional.empty();
     }
-    for (Bar b : getBarSeries().getBarData()) {
-      if (b.getBeginTime().isAfter(d)) {
-        return Optional.of(b);
+    int i = getIndex().ceilingIndex(d.toLocalDate().plusDays(1));
+    return i < 0 ? Optional.empty() : Optional.of(getBarSeries().getBar(i));
+  }
+
+  /**
+   * Computes ARR for every bar in a single pass. The start bar of each window only moves forward as
+   * the end bar does, so the whole column is O(n). Bars without a full window are NaN.
+   */
+  public double[] computeAll() {
+    EpochDayIndex idx = getIndex();
+    BarSeries bs = getBarSeries();
+    int n = idx.size();
+    int begin = Math.max(bs.getBeginIndex(), 0);
+    long days = (int) (years * 365);
+
+    double[] arr = new double[n];
+    Arrays.fill(arr, Double.NaN);
+    int j = 0;
+    for (int i = 0; i < n; i++) {
+      long target = idx.getEpochDay(begin + i) - days;
+      while (j + 1 < n && idx.getEpochDay(begin + j + 1) <= target) {
+        j++;
+      }
+      if (idx.getEpochDay(begin + j) > target) {
+        continue;
+      }
+      Bar b0 = bs.getBar(begin + j);
+      Bar b1 = bs.getBar(begin + i);
+      if (b0.getClosePrice() != null && b1.getClosePrice() != null) {
+        arr[i] = calculateARR(b0, b1);
       }
     }
-    return Optional.empty();
+    return arr;
   }
 
   @Override
   public Num getValue(int index) {
-
-    Bar b1 = getBarSeries().getBar(index);
-    ZonedDateTime t1 = b1.getBeginTime();
-
-    ZonedDateTime t0 = t1.minusDays((int) (years * 365));
-
-    Optional<Bar> b0 = findFirstBarOnOrBefore(t0);
-    if (b0.isEmpty()) {
+    double[] v = values;
+    if (v == null || v.length != getBarSeries().getBarCount()) {
+      v = computeAll();
+      values = v;
+    }
+    double arr = v[index - Math.max(getBarSeries().getBeginIndex(), 0)];
+    if (Double.isNaN(arr)) {
       return null;
     }
-
-    double arr = calculateARR(b0.get(), b1);
-
     return DoubleNum.valueOf(arr);
   }
 
@@ -1,17 +1,18 @@
 package bq.indicator;
 
+import bq.util.ta4j.Bars;
+import bq.util.ta4j.EpochDayIndex;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.ta4j.core.Bar;
 import org.ta4j.core.BarSeries;
@@ -23,6 +24,7 @@ public class LinearTrendModel {
   static ZoneId UTC = ZoneId.of("UTC");
 
   BarSeries barSeries;
+  EpochDayIndex dateIndex;
 
   Double m; // slope
   Double b; // y intercept
@@ -77,13 +79,15 @@ public class LinearTrendModel {
   }
 
   Optional<Bar> findBar(LocalDate d) {
-    if (d == null) {
+    if (d == null || barSeries == null) {
       return Optional.empty();
     }
-
-    return stream(this.barSeries)
-        .filter(b -> !b.getBeginTime().isBefore(d.atStartOfDay(UTC)))
-        .findFirst();
+    if (dateIndex == null) {
+      dateIndex = Bars.dateIndex(barSeries);
+    }
+    // first bar on or after d
+    int i = dateIndex.ceilingIndex(d);
+    return i < 0 ? Optional.empty() : Optional.of(barSeries.getBar(i));
   }
 
   public Function<ZonedDateTime, Num> trendValueFunction() {
@@ -297,14 +301,10 @@ public class LinearTrendModel {
   }
 
   static Stream<Bar> stream(BarSeries bs) {
-    if (bs == null) {
+    if (bs == null || bs.isEmpty()) {
       return Stream.empty();
     }
-    List<Bar> tmp = Lists.newArrayList();
-    for (int i = bs.getBeginIndex(); i <= bs.getEndIndex(); i++) {
-      tmp.add(bs.getBar(i));
-    }
-    return tmp.stream();
+    return IntStream.rangeClosed(bs.getBeginIndex(), bs.getEndIndex()).mapToObj(bs::getBar);
   }
 
   public String toString() {
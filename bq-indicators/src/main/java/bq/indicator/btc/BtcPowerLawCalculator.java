@@ -47,7 +47,8 @@ public class BtcPowerLawCalculator {
 
     int totalCount = 0;
     int belowModelCount = 0;
-    for (Bar b : data.getBarData()) {
+    for (int i = 0; i < data.getBarCount(); i++) {
+      Bar b = data.getBar(data.getBeginIndex() + i);
 
       LocalDate d = b.getBeginTime().toLocalDate();
 
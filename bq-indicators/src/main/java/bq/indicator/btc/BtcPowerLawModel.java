@@ -4,6 +4,7 @@ import static bq.indicator.btc.BtcPowerLawCalculator.calculateDate;
 
 import bq.util.ClasspathResources;
 import bq.util.Json;
+import bq.util.ta4j.EpochDayIndex;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -17,6 +18,7 @@ import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.function.Supplier;
 import org.ta4j.core.BarSeries;
+import org.ta4j.core.num.Num;
 
 public class BtcPowerLawModel {
 
@@ -31,6 +33,12 @@ public class BtcPowerLawModel {
   Double explicitC = null;
   Double explicitA = null;
 
+  // c-value of each quantile, unboxed on first use
+  volatile double[] cValues;
+
+  // true if c-values never increase with quantile, so that they can be binary searched
+  boolean descending;
+
   public static QuantileModel getDefaultModel() {
     return supplier.get();
   }
@@ -236,28 +244,100 @@ public class BtcPowerLawModel {
   }
 
   public double getQuantile(LocalDate d, double price) {
+    return findQuantile(Math.log10(BtcUtil.getDaysSinceGenesis(d)), price);
+  }
 
-    for (int q = 0; q < 100; q++) {
-      double modelPrice = getPrice(d, q);
-
-      if (modelPrice == price) {
-        return q;
+  /**
+   * Quantile of the close of every bar in the series, NaN where the close is null. Days since
+   * genesis come from the epoch day of each bar, so no dates are materialized.
+   */
+  public double[] computeQuantiles(BarSeries series) {
+    requireQuantileModel();
+    EpochDayIndex idx = EpochDayIndex.of(series);
+    int begin = Math.max(series.getBeginIndex(), 0);
+    long genesis = BtcUtil.GENESIS_DATE.toEpochDay();
+    double[] quantiles = new double[idx.size()];
+    for (int i = 0; i < quantiles.length; i++) {
+      Num close = series.getBar(begin + i).getClosePrice();
+      if (close == null) {
+        quantiles[i] = Double.NaN;
+      } else {
+        double logDays = Math.log10(idx.getEpochDay(begin + i) - genesis);
+        quantiles[i] = findQuantile(logDays, close.doubleValue());
       }
-      if (modelPrice > price) {
-
-        if (q > 1) {
+    }
+    return quantiles;
+  }
 
-          double diff0 = Math.abs(price - getPrice(d, q - 1));
-          double diff1 = Math.abs(price - modelPrice);
-          if (diff0 < diff1) {
-            return q - 1;
-          }
+  /**
+   * The model price is 10^(a*log10(days) - c), so the c-value that a price corresponds to takes a
+   * single log, and its quantile is found by binary search of the c-values, which decrease as the
+   * quantile increases. Model prices are rounded, so the neighbouring quantiles are then checked
+   * against the rounded prices to give the same answer as comparing against each quantile in turn.
+   */
+  int findQuantile(double logDays, double price) {
+    double[] c = cValues();
+    double a = a();
+    int n = c.length;
+    int q = 0;
+    if (descending) {
+      double x = logDays * a - Math.log10(price);
+      int lo = 0;
+      int hi = n;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (c[mid] > x) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
         }
-        return q;
       }
+      q = lo;
+      while (q > 0 && modelPrice(logDays, a, c[q - 1]) >= price) {
+        q--;
+      }
+    }
+    // first quantile with a model price at or above the price
+    while (q < n && !(modelPrice(logDays, a, c[q]) >= price)) {
+      q++;
+    }
+    if (q == n) {
+      return n - 1;
     }
+    double modelPrice = modelPrice(logDays, a, c[q]);
+    if (modelPrice == price) {
+      return q;
+    }
+    if (q > 1) {
+      double diff0 = Math.abs(price - modelPrice(logDays, a, c[q - 1]));
+      double diff1 = Math.abs(price - modelPrice);
+      if (diff0 < diff1) {
+        return q - 1;
+      }
+    }
+    return q;
+  }
+
+  // same as BtcPowerLawCalculator.calculatePrice(), with log10(days) precomputed
+  private static double modelPrice(double logDays, double a, double c) {
+    return Math.round(Math.pow(10, (logDays * a) - c));
+  }
 
-    return quantileModel.getQuantiles().size() - 1;
+  private double[] cValues() {
+    requireQuantileModel();
+    double[] c = this.cValues;
+    if (c == null) {
+      List<Double> quantiles = this.quantileModel.getQuantiles();
+      c = new double[quantiles.size()];
+      boolean sorted = true;
+      for (int i = 0; i < c.length; i++) {
+        c[i] = quantiles.get(i);
+        sorted = sorted && (i == 0 || c[i] <= c[i - 1]);
+      }
+      this.descending = sorted;
+      this.cValues = c;
+    }
+    return c;
   }
 
   public double getPrice(LocalDate d) {
@@ -282,8 +362,7 @@ public class BtcPowerLawModel {
   }
 
   double c(int q) {
-    requireQuantileModel();
-    return this.quantileModel.getQuantiles().get(q);
+    return cValues()[q];
   }
 
   public double getPrice(LocalDate d, int q) {
@@ -1,12 +1,14 @@
 package bq.indicator.btc;
 
-import java.time.LocalDate;
 import org.ta4j.core.BarSeries;
 import org.ta4j.core.num.DoubleNum;
 import org.ta4j.core.num.Num;
 
 public class BtcPowerLawQuantileIndicator extends AbstractBtcPowerLawIndicator {
 
+  // quantile for every bar, computed on first use
+  double[] values;
+
   public BtcPowerLawQuantileIndicator(BarSeries series) {
     super(series);
   }
@@ -19,16 +21,21 @@ public class BtcPowerLawQuantileIndicator extends AbstractBtcPowerLawIndicator {
     super(series, q);
   }
 
+  public double[] computeAll() {
+    return this.powerLaw.computeQuantiles(getBarSeries());
+  }
+
   @Override
   public Num getValue(int index) {
-
-    Num num = getBarSeries().getBar(index).getClosePrice();
-    if (num == null) {
+    double[] v = values;
+    if (v == null || v.length != getBarSeries().getBarCount()) {
+      v = computeAll();
+      values = v;
+    }
+    double q = v[index - Math.max(getBarSeries().getBeginIndex(), 0)];
+    if (Double.isNaN(q)) {
       return null;
     }
-    LocalDate d = getDate(index);
-    double q = this.powerLaw.getQuantile(d, num.doubleValue());
-
     return DoubleNum.valueOf(q);
   }
 }
@@ -10,6 +10,8 @@ import org.assertj.core.data.Percentage;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
+import org.ta4j.core.Bar;
+import org.ta4j.core.BarSeries;
 
 @TestMethodOrder(MethodOrderer.MethodName.class)
 public class ARRIndicatorTest extends IndicatorTest {
@@ -68,6 +70,35 @@ public class ARRIndicatorTest extends IndicatorTest {
         .view();
   }
 
+  @Test
+  public void testComputeAll() {
+    BarSeriesTable t = loadBtcTable();
+    BarSeries bs = t.getBarSeries();
+    ARRIndicator indicator = new ARRIndicator(bs, 2);
+
+    double[] arr = indicator.computeAll();
+    Assertions.assertThat(arr).hasSize(bs.getBarCount());
+
+    for (int i = 0; i < bs.getBarCount(); i += 37) {
+      // linear scan for the last bar on or before t1 - 2 years
+      Bar b1 = bs.getBar(i);
+      LocalDate t0 = b1.getBeginTime().toLocalDate().minusDays(2 * 365);
+      Bar b0 = null;
+      for (int j = 0; j <= i; j++) {
+        if (!bs.getBar(j).getBeginTime().toLocalDate().isAfter(t0)) {
+          b0 = bs.getBar(j);
+        }
+      }
+      if (b0 == null) {
+        Assertions.assertThat(arr[i]).isNaN();
+        Assertions.assertThat(indicator.getValue(i)).isNull();
+      } else {
+        Assertions.assertThat(arr[i]).isEqualTo(indicator.calculateARR(b0, b1));
+        Assertions.assertThat(indicator.getValue(i).doubleValue()).isEqualTo(arr[i]);
+      }
+    }
+  }
+
   @Test
   public void testPositive() {
 
@@ -7,6 +7,7 @@ import bq.ducktape.DuckTape;
 import bq.ducktape.chart.Chart;
 import bq.indicator.IndicatorTest;
 import bq.indicator.btc.BtcPowerLawModel.QuantileModel;
+import com.google.common.collect.Lists;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.io.Files;
 import java.io.File;
@@ -14,9 +15,12 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.ta4j.core.Bar;
+import org.ta4j.core.BarSeries;
 
 public class BtcPowerLawModelTest extends IndicatorTest {
 
@@ -246,6 +250,80 @@ public class BtcPowerLawModelTest extends IndicatorTest {
     }
   }
 
+  // getQuantile() as it was implemented before the binary search, one quantile at a time
+  static double referenceQuantile(BtcPowerLawModel m, LocalDate d, double price) {
+    for (int q = 0; q < 100; q++) {
+      double modelPrice = m.getPrice(d, q);
+      if (modelPrice >= price) {
+        if (modelPrice == price) {
+          return q;
+        }
+        if (q > 1) {
+          double diff0 = Math.abs(price - m.getPrice(d, q - 1));
+          double diff1 = Math.abs(price - modelPrice);
+          if (diff0 < diff1) {
+            return q - 1;
+          }
+        }
+        return q;
+      }
+    }
+    return 99;
+  }
+
+  @Test
+  public void testGetQuantileMatchesReference() {
+    BtcPowerLawModel m = BtcPowerLawModel.create();
+    for (LocalDate d = LocalDate.of(2010, 1, 1);
+        d.isBefore(LocalDate.of(2035, 1, 1));
+        d = d.plusDays(37)) {
+      List<Double> prices =
+          Lists.newArrayList(
+              Double.NaN,
+              0d,
+              m.getPrice(d, 0) - 1,
+              m.getPrice(d, 99) + 1,
+              m.getPrice(d, 99) * 10);
+      for (int q = 0; q < 100; q++) {
+        double modelPrice = m.getPrice(d, q);
+        for (int delta = -3; delta <= 3; delta++) {
+          prices.add(modelPrice + delta);
+        }
+        prices.add(modelPrice - 0.5);
+        prices.add(modelPrice + 0.5);
+        if (q > 0) {
+          // ties between neighbouring quantiles
+          prices.add((modelPrice + m.getPrice(d, q - 1)) / 2);
+        }
+      }
+      for (double price : prices) {
+        Assertions.assertThat(m.getQuantile(d, price))
+            .as("quantile of %s on %s", price, d)
+            .isEqualTo(referenceQuantile(m, d, price));
+      }
+    }
+  }
+
+  @Test
+  public void testComputeQuantiles() {
+    BarSeries series = loadBtcTable().getBarSeries();
+    BtcPowerLawModel m = BtcPowerLawModel.create();
+
+    double[] quantiles = m.computeQuantiles(series);
+    Assertions.assertThat(quantiles).hasSize(series.getBarCount());
+
+    for (int i = 0; i < quantiles.length; i++) {
+      Bar b = series.getBar(series.getBeginIndex() + i);
+      LocalDate d = b.getBeginTime().toLocalDate();
+      Assertions.assertThat(quantiles[i])
+          .isEqualTo(m.getQuantile(d, b.getClosePrice().doubleValue()));
+    }
+
+    BtcPowerLawQuantileIndicator indicator = new BtcPowerLawQuantileIndicator(series, m);
+    Assertions.assertThat(indicator.getValue(series.getEndIndex()).doubleValue())
+        .isEqualTo(quantiles[quantiles.length - 1]);
+  }
+
   @Test
   public void testChart() {
     BarSeriesTable t = loadBtcTable();
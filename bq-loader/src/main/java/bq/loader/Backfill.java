@@ -0,0 +1,134 @@
+package bq.loader;
+
+import bq.util.BqException;
+import bq.util.ta4j.Bars;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.flogger.FluentLogger;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import org.ta4j.core.Bar;
+
+/**
+ * Fetches a long date range from a paged API. The range is split into windows up front and the
+ * windows are fetched concurrently, newest first. Request rate is left to the provider's
+ * Throttle; parallelism only bounds the number of requests in flight.
+ */
+public class Backfill {
+
+  static FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  public static class Window {
+    final LocalDate from;
+    final LocalDate to;
+
+    Window(LocalDate from, LocalDate to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    public LocalDate getFrom() {
+      return from;
+    }
+
+    public LocalDate getTo() {
+      return to;
+    }
+
+    public String toString() {
+      return MoreObjects.toStringHelper("Window").add("from", from).add("to", to).toString();
+    }
+  }
+
+  private Backfill() {}
+
+  /** Splits [from, to] into non-overlapping windows of at most maxDays days, newest first. */
+  public static List<Window> windows(LocalDate from, LocalDate to, int maxDays) {
+    Preconditions.checkArgument(maxDays > 0, "maxDays must be > 0");
+    List<Window> windows = Lists.newArrayList();
+    LocalDate t1 = to;
+    while (!t1.isBefore(from)) {
+      LocalDate t0 = t1.minusDays(maxDays - 1);
+      if (t0.isBefore(from)) {
+        t0 = from;
+      }
+      windows.add(new Window(t0, t1));
+      t1 = t0.minusDays(1);
+    }
+    return windows;
+  }
+
+  /**
+   * Fetches every window and returns the bars in ascending date order. Once a window comes back
+   * empty there is assumed to be no earlier history, so older windows that have not yet started
+   * are skipped. If a fetch fails, no further windows are started and the first failure is thrown.
+   */
+  public static List<Bar> fetch(
+      List<Window> windows, Function<Window, List<Bar>> fetcher, int parallelism) {
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be > 0");
+
+    // each worker takes the next window in order, so windows start strictly newest first
+    List<List<Bar>> results = Lists.newArrayList(Collections.nCopies(windows.size(), List.of()));
+    AtomicInteger next = new AtomicInteger();
+    AtomicReference<LocalDate> historyStart = new AtomicReference<>(LocalDate.MIN);
+    AtomicBoolean failed = new AtomicBoolean();
+
+    List<Future<?>> futures = Lists.newArrayList();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int t = 0; t < Math.min(parallelism, windows.size()); t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  int i;
+                  while (!failed.get() && (i = next.getAndIncrement()) < windows.size()) {
+                    Window w = windows.get(i);
+                    if (!w.to.isAfter(historyStart.get())) {
+                      continue;
+                    }
+                    List<Bar> bars;
+                    try {
+                      bars = fetcher.apply(w);
+                    } catch (RuntimeException | Error e) {
+                      // stop the other workers from starting new requests
+                      failed.set(true);
+                      throw e;
+                    }
+                    if (bars.isEmpty()) {
+                      historyStart.accumulateAndGet(w.to, (a, b) -> a.isAfter(b) ? a : b);
+                    }
+                    results.set(i, bars);
+                  }
+                }));
+      }
+    }
+
+    for (Future<?> f : futures) {
+      try {
+        f.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new BqException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new BqException(e.getCause());
+      }
+    }
+    List<Bar> bars = Lists.newArrayList();
+    results.forEach(bars::addAll);
+    bars.sort(Bars.ascendingDateOrder());
+    logger.atFine().log("fetched %s bars in %s windows", bars.size(), windows.size());
+    return bars;
+  }
+}
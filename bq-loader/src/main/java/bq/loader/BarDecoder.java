@@ -0,0 +1,177 @@
+package bq.loader;
+
+import bq.util.BqException;
+import bq.util.Json;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+
+/**
+ * Streaming decoder for provider OHLCV responses. It walks the response with a JsonParser and
+ * passes each element of the records array to a Handler as primitives, without building a
+ * JsonNode tree. Numbers may be encoded as JSON numbers or strings; missing and null values are
+ * passed as NaN.
+ */
+public class BarDecoder {
+
+  static final long MILLIS_PER_DAY = 86_400_000L;
+  static final long SECONDS_PER_DAY = 86_400L;
+
+  public interface Handler {
+    void bar(
+        String ticker,
+        long epochDay,
+        double open,
+        double high,
+        double low,
+        double close,
+        double volume);
+  }
+
+  String arrayField;
+  String timeField;
+  boolean timeInMillis;
+  String openField;
+  String highField;
+  String lowField;
+  String closeField;
+  String volumeField;
+  String tickerField;
+
+  BarDecoder() {}
+
+  /** Polygon aggregates: {"results":[{"T":"AAPL","t":1704153600000,"o":..,"c":..}]} */
+  public static BarDecoder polygon() {
+    BarDecoder d = new BarDecoder();
+    d.arrayField = "results";
+    d.timeField = "t";
+    d.timeInMillis = true;
+    d.openField = "o";
+    d.highField = "h";
+    d.lowField = "l";
+    d.closeField = "c";
+    d.volumeField = "v";
+    d.tickerField = "T";
+    return d;
+  }
+
+  /** Coinbase candles: {"candles":[{"start":"1704153600","open":"42000.1",..}]} */
+  public static BarDecoder coinbase() {
+    BarDecoder d = new BarDecoder();
+    d.arrayField = "candles";
+    d.timeField = "start";
+    d.timeInMillis = false;
+    d.openField = "open";
+    d.highField = "high";
+    d.lowField = "low";
+    d.closeField = "close";
+    d.volumeField = "volume";
+    return d;
+  }
+
+  /**
+   * Decodes a response body. Records without a timestamp are skipped.
+   *
+   * @return the number of records passed to the handler
+   */
+  public int decode(byte[] body, Handler handler) {
+    try (JsonParser p = Json.mapper().getFactory().createParser(body)) {
+      return decode(p, handler);
+    } catch (IOException e) {
+      throw new BqException(e);
+    }
+  }
+
+  int decode(JsonParser p, Handler handler) throws IOException {
+    if (p.nextToken() != JsonToken.START_OBJECT) {
+      return 0;
+    }
+    int count = 0;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String name = p.currentName();
+      JsonToken t = p.nextToken();
+      if (name.equals(arrayField) && t == JsonToken.START_ARRAY) {
+        while (p.nextToken() == JsonToken.START_OBJECT) {
+          if (decodeRecord(p, handler)) {
+            count++;
+          }
+        }
+      } else {
+        p.skipChildren();
+      }
+    }
+    return count;
+  }
+
+  boolean decodeRecord(JsonParser p, Handler handler) throws IOException {
+    String ticker = null;
+    long time = Long.MIN_VALUE;
+    double open = Double.NaN;
+    double high = Double.NaN;
+    double low = Double.NaN;
+    double close = Double.NaN;
+    double volume = Double.NaN;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String name = p.currentName();
+      p.nextToken();
+      if (name.equals(timeField)) {
+        time = readLong(p);
+      } else if (name.equals(openField)) {
+        open = readDouble(p);
+      } else if (name.equals(highField)) {
+        high = readDouble(p);
+      } else if (name.equals(lowField)) {
+        low = readDouble(p);
+      } else if (name.equals(closeField)) {
+        close = readDouble(p);
+      } else if (name.equals(volumeField)) {
+        volume = readDouble(p);
+      } else if (name.equals(tickerField)) {
+        ticker = p.getValueAsString();
+      } else {
+        p.skipChildren();
+      }
+    }
+    if (time == Long.MIN_VALUE) {
+      return false;
+    }
+    long epochDay =
+        timeInMillis ? Math.floorDiv(time, MILLIS_PER_DAY) : Math.floorDiv(time, SECONDS_PER_DAY);
+    handler.bar(ticker, epochDay, open, high, low, close, volume);
+    return true;
+  }
+
+  static double readDouble(JsonParser p) throws IOException {
+    switch (p.currentToken()) {
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return p.getDoubleValue();
+      case VALUE_STRING:
+        try {
+          return Double.parseDouble(p.getText());
+        } catch (NumberFormatException e) {
+          return Double.NaN;
+        }
+      default:
+        p.skipChildren();
+        return Double.NaN;
+    }
+  }
+
+  static long readLong(JsonParser p) throws IOException {
+    switch (p.currentToken()) {
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return p.getLongValue();
+      case VALUE_STRING:
+        try {
+          return Long.parseLong(p.getText().trim());
+        } catch (NumberFormatException e) {
+          return Long.MIN_VALUE;
+        }
+      default:
+        p.skipChildren();
+        return Long.MIN_VALUE;
+    }
+  }
+}
@@ -1,20 +1,18 @@
 package bq.loader;
 
 import bq.duckdb.DuckDb;
+import bq.loader.polygon.PolygonDataProvider;
 import bq.util.Config;
-import bq.util.Json;
 import bq.util.S;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.flogger.FluentLogger;
 import java.time.LocalDate;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
 import kong.unirest.core.HttpResponse;
 import kong.unirest.core.Unirest;
 
@@ -64,6 +62,19 @@ public class BreadthCalculator {
         """;
     sql = sql.replace("{{table}}", table);
     db.template().execute(sql);
+
+    // raw closes for each market day, from which the breadth table is derived
+    sql =
+        """
+        create table if not exists {{table}} (
+          date date,
+          symbol varchar,
+          close double,
+          volume bigint
+        )
+        """;
+    sql = sql.replace("{{table}}", getPricesTable());
+    db.template().execute(sql);
     return this;
   }
 
@@ -90,155 +101,173 @@ public class BreadthCalculator {
         .toList();
   }
 
-  JsonNode getAllStocks(LocalDate d) {
+  byte[] getAllStocks(LocalDate d) {
 
     String url =
         String.format(
             "https://api.polygon.io/v2/aggs/grouped/locale/us/market/stocks/%s?adjusted=true",
             d.toString());
 
+    PolygonDataProvider.getThrottle().acquire();
     HttpResponse<byte[]> r =
         Unirest.get(url)
             .header("Authorization", "Bearer " + Config.get("POLYGON_API_KEY").orElse(""))
             .asBytes();
 
-    return Json.readTree(r.getBody());
+    return r.getBody();
+  }
+
+  String getPricesTable() {
+    return table + "_prices";
   }
 
+  /**
+   * Appends the grouped-daily closes of the included symbols for each market day in the range to
+   * the staging table, replacing any that were already staged, and then recalculates breadth
+   * from the first fetched day onwards.
+   */
   public BreadthCalculator fetchData() {
 
     Preconditions.checkNotNull(db, "db");
-    Map<String, Double> priceMap = Maps.newHashMap();
-    Map<String, Long> volumeMap = Maps.newHashMap();
+    Preconditions.checkNotNull(fromDate, "fromDate");
+    Preconditions.checkNotNull(toDate, "toDate");
 
-    Map<String, Double> priorPriceMap = Maps.newHashMap();
-    Map<String, Long> priorVolumeMap = Maps.newHashMap();
+    db.template()
+        .execute(
+            c ->
+                c.sql("delete from ##prices## where date between {{from}} and {{to}}")
+                    .bind("prices", getPricesTable())
+                    .bind("from", fromDate)
+                    .bind("to", toDate));
 
     LocalDate d = fromDate;
     while (!d.isAfter(toDate)) {
 
-      var json = getAllStocks(d);
-
-      if (json.path("results").size() > 100) {
-        priorPriceMap.clear();
-        priorPriceMap.putAll(priceMap);
-        priorVolumeMap.clear();
-        priorVolumeMap.putAll(volumeMap);
-
-        priceMap.clear();
-        volumeMap.clear();
-
-        json.path("results")
-            .forEach(
-                it -> {
-                  String symbol = it.path("T").asText();
-                  if (this.symbols.contains(symbol)) {
-
-                    double price = it.path("c").asDouble(-1);
-                    long volume = it.path("v").asLong(-1);
-                    if (price >= 0 && volume >= 0) {
-                      priceMap.put(symbol, price);
-                      volumeMap.put(symbol, volume);
+      List<String> daySymbols = Lists.newArrayList();
+      List<Double> dayCloses = Lists.newArrayList();
+      List<Long> dayVolumes = Lists.newArrayList();
+      int recordCount =
+          BarDecoder.polygon()
+              .decode(
+                  getAllStocks(d),
+                  (symbol, epochDay, open, high, low, close, volume) -> {
+                    if (symbol != null && this.symbols.contains(symbol)) {
+                      if (close >= 0 && volume >= 0) {
+                        daySymbols.add(symbol);
+                        dayCloses.add(close);
+                        dayVolumes.add((long) volume);
+                      }
                     }
+                  });
+
+      // weekends and holidays return few or no results
+      if (recordCount > 100) {
+        LocalDate date = d;
+        db.table(getPricesTable())
+            .append(
+                appender -> {
+                  for (int i = 0; i < daySymbols.size(); i++) {
+                    appender.beginRow();
+                    appender.appendLocalDateTime(date.atStartOfDay());
+                    appender.append(daySymbols.get(i));
+                    appender.append(dayCloses.get(i));
+                    appender.append(dayVolumes.get(i));
+                    appender.endRow();
                   }
                 });
-
-        int advancers = 0;
-        int decliners = 0;
-        int total = 0;
-        long advancingVolume = 0;
-        long decliningVolume = 0;
-        long totalVolume = 0;
-        for (String symbol : priceMap.keySet()) {
-          Double price = priceMap.get(symbol);
-          Double priorPrice = priorPriceMap.get(symbol);
-          Long volume = volumeMap.get(symbol);
-          if (price != null && priorPrice != null) {
-            if (price > priorPrice) {
-              advancers++;
-              advancingVolume += volume;
-            } else if (price < priorPrice) {
-              decliners++;
-              decliningVolume += volume;
-            }
-            total++;
-            totalVolume += volume;
-          }
-        }
-        logger.atInfo().log(
-            "date=%s advancers=%s decliners=%s total=%s advancingVolume=%s decliningVolume=%s"
-                + " totalVolume=%s",
-            d, advancers, decliners, total, advancingVolume, decliningVolume, totalVolume);
-
-        String sql =
-            """
-insert into ##table## (date,adv_count,dec_count,total_count,
-adv_volume, dec_volume, total_volume
-)
-values ({{date}},{{adv_count}},{{dec_count}},{{total_count}},{{adv_volume}},{{dec_volume}},
-{{total_volume}})
-""";
-
-        String fsql = sql;
-        final LocalDate fd = d;
-        final long fAdvancers = advancers;
-        final long fDecliners = decliners;
-        final long fTotal = total;
-        final long fAdvancingVolume = advancingVolume;
-        final long fDecliningVolume = decliningVolume;
-        final long fTotalVolume = totalVolume;
-
-        db.template()
-            .update(
-                c -> {
-                  c.sql(fsql);
-                  c.bind("table", table);
-                  c.bind("date", fd);
-                  c.bind("adv_count", fAdvancers);
-                  c.bind("dec_count", fDecliners);
-                  c.bind("total_count", fTotal);
-                  c.bind("adv_volume", fAdvancingVolume);
-                  c.bind("dec_volume", fDecliningVolume);
-                  c.bind("total_volume", fTotalVolume);
-                });
-        // appender.beginRow();
-        // appender.appendLocalDateTime(d.atStartOfDay());
-        // appender.append(advancers);
-        // appender.append(decliners);
-        // appender.append(total);
-        // appender.append(advancingVolume);
-        // appender.append(decliningVolume);
-        // appender.append(totalVolume);
-        // appender.endRow();
+        logger.atInfo().log("date=%s symbols=%s", d, daySymbols.size());
       }
       d = d.plusDays(1);
     }
-    recalculateAd();
 
-    return this;
+    LocalDate since = fromDate.minusDays(1);
+    Optional<LocalDate> last = getLastDate();
+    if (last.isPresent() && last.get().isBefore(since)) {
+      since = last.get();
+    }
+    return recalculate(since);
   }
 
-  private BreadthCalculator recalculateAd() {
-    db.template().execute("update " + table + " set ad=adv_count-dec_count");
-
-    AtomicLong cumulativeAd = new AtomicLong();
-    Map<Long, Long> vals = Maps.newHashMap();
-    db.template()
+  Optional<LocalDate> getLastDate() {
+    return db.template()
         .query(
-            c -> c.sql("select rowid,date,ad from " + table + " order by date"),
-            rs -> {
-              long ad = rs.getLong("ad").orElse(0l);
-              long rowId = rs.getLong("rowid").get();
-              long cumulative = cumulativeAd.addAndGet(ad);
+            c -> c.sql("select max(date)::varchar as d from ##table##").bind("table", table),
+            rs -> rs.getString("d"))
+        .findFirst()
+        .flatMap(it -> it)
+        .map(LocalDate::parse);
+  }
 
-              vals.put(rowId, cumulative);
-              return "";
-            });
+  /**
+   * Recomputes every breadth row after the given date in a single statement. Each symbol's close
+   * is compared with its close on the previous market day; symbols that did not trade on both
+   * days are not counted. cumulative_ad continues from the last row on or before since.
+   */
+  public BreadthCalculator recalculate(LocalDate since) {
+    String sql =
+        """
+        insert or replace into ##table##
+          (date, adv_count, dec_count, total_count, adv_volume, dec_volume, total_volume, ad,
+            cumulative_ad)
+        with days as (
+          select date, lag(date) over (order by date) as prior_date
+          from (select distinct date from ##prices##)
+        ),
+        changes as (
+          select date, volume,
+            close - lag(close) over (partition by symbol order by date) as change,
+            lag(date) over (partition by symbol order by date) as prior_date
+          from ##prices##
+        ),
+        counts as (
+          select c.date,
+            count(*) filter (where change > 0) as adv_count,
+            count(*) filter (where change < 0) as dec_count,
+            count(*) as total_count,
+            coalesce(sum(volume) filter (where change > 0), 0) as adv_volume,
+            coalesce(sum(volume) filter (where change < 0), 0) as dec_volume,
+            coalesce(sum(volume), 0) as total_volume
+          from changes c join days d on c.date = d.date and c.prior_date = d.prior_date
+          group by c.date
+        ),
+        breadth as (
+          select d.date,
+            coalesce(adv_count, 0) as adv_count,
+            coalesce(dec_count, 0) as dec_count,
+            coalesce(total_count, 0) as total_count,
+            coalesce(adv_volume, 0) as adv_volume,
+            coalesce(dec_volume, 0) as dec_volume,
+            coalesce(total_volume, 0) as total_volume,
+            coalesce(adv_count, 0) - coalesce(dec_count, 0) as ad
+          from days d left join counts c on d.date = c.date
+          where d.date > {{since}}
+        )
+        select date, adv_count, dec_count, total_count, adv_volume, dec_volume, total_volume, ad,
+          {{base}} + sum(ad) over (order by date) as cumulative_ad
+        from breadth
+        order by date
+        """;
+    long base =
+        db.template()
+            .query(
+                c ->
+                    c.sql(
+                            "select cumulative_ad from ##table## where date <= {{since}}"
+                                + " order by date desc limit 1")
+                        .bind("table", table)
+                        .bind("since", since),
+                rs -> rs.getLong("cumulative_ad").orElse(0L))
+            .findFirst()
+            .orElse(0L);
 
-    vals.forEach(
-        (rowId, val) -> {
-          db.table(table).update(rowId, "cumulative_ad", val);
-        });
+    db.template()
+        .execute(
+            c ->
+                c.sql(sql)
+                    .bind("table", table)
+                    .bind("prices", getPricesTable())
+                    .bind("since", since)
+                    .bind("base", base));
 
     return this;
   }
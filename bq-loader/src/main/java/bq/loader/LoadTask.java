@@ -3,16 +3,16 @@ package bq.loader;
 import bq.duckdb.DuckDb;
 import bq.loader.coinbase.CoinbaseDataProvider;
 import bq.loader.polygon.PolygonDataProvider;
+import bq.util.Zones;
 import bq.util.ta4j.Bars;
 import bq.util.ta4j.ImmutableBarSeries;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
 import com.google.common.flogger.FluentLogger;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.util.Collections;
+import java.time.ZoneId;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 import org.ta4j.core.Bar;
 import org.ta4j.core.BarSeries;
 
@@ -20,6 +20,10 @@ public class LoadTask extends Loader<LoadTask> {
 
   static FluentLogger logger = FluentLogger.forEnclosingClass();
 
+  int newBarCount = 0;
+  LocalDate firstNewDate = null;
+  S3Loader.SymbolObject s3Object;
+
   public LoadTask(DuckDb db) {
     super(db);
   }
@@ -57,27 +61,7 @@ public class LoadTask extends Loader<LoadTask> {
       s3Data = ImmutableBarSeries.empty();
     }
     logger.atInfo().log("performing full load for %s", symbol);
-    var allDataFromProvider = getDataProvider().loadAll();
-
-    var newBars = Bars.difference(Bars.toList(allDataFromProvider), Bars.toList(s3Data));
-
-    // filter out data for un-closed days (i.e. intraday)
-    LocalDate lastClosedTradingDay = getLastClosedTradingDay();
-    newBars =
-        newBars.stream().filter(Bars.notAfter(lastClosedTradingDay)).collect(Collectors.toSet());
-
-    List<Bar> mergedBars = Lists.newArrayList();
-
-    mergedBars.addAll(Bars.toList(s3Data));
-    mergedBars.addAll(newBars);
-
-    Collections.sort(mergedBars, Bars.ascendingDateOrder());
-
-    BarSeries complete = ImmutableBarSeries.of(mergedBars, "updated " + symbol);
-
-    Preconditions.checkState(complete.getBarCount() >= s3Data.getBarCount());
-
-    return complete;
+    return merge(s3Data, getDataProvider().loadAll());
   }
 
   public BarSeries loadIncremental(BarSeries s3Data) {
@@ -86,21 +70,34 @@ public class LoadTask extends Loader<LoadTask> {
     var incrementalBarSeriesFromProvider =
         getDataProvider().fetch(LocalDate.now().minusDays(50), getLastClosedTradingDay());
 
-    var newBars =
-        Bars.difference(Bars.toList(incrementalBarSeriesFromProvider), Bars.toList(s3Data));
+    return merge(s3Data, incrementalBarSeriesFromProvider);
+  }
+
+  /**
+   * Adds the provider bars that are not already in S3. Both series are sorted by date, so this is
+   * a single linear pass rather than a set difference followed by a sort.
+   */
+  BarSeries merge(BarSeries s3Data, BarSeries fromProvider) {
+    List<Bar> existing = Bars.toList(s3Data);
+
     // filter out data for un-closed days (i.e. intraday)
     LocalDate lastClosedTradingDay = getLastClosedTradingDay();
-    newBars =
-        newBars.stream().filter(Bars.notAfter(lastClosedTradingDay)).collect(Collectors.toSet());
-
-    List<Bar> mergedBars = Lists.newArrayList();
+    List<Bar> additions =
+        Bars.toList(fromProvider).stream().takeWhile(Bars.notAfter(lastClosedTradingDay)).toList();
 
-    mergedBars.addAll(Bars.toList(s3Data));
-    mergedBars.addAll(newBars);
+    List<Bar> mergedBars = Bars.mergeSorted(existing, additions);
+    newBarCount = mergedBars.size() - existing.size();
 
-    Collections.sort(mergedBars, Bars.ascendingDateOrder());
+    // existing bars are kept as-is, so the first bar whose date differs is the first change
+    int k = 0;
+    while (k < existing.size()
+        && mergedBars.get(k).getBeginTime().equals(existing.get(k).getBeginTime())) {
+      k++;
+    }
+    firstNewDate = k < mergedBars.size() ? mergedBars.get(k).getBeginTime().toLocalDate() : null;
+    logger.atInfo().log("%s new bars for %s", newBarCount, symbol);
 
-    BarSeries complete = ImmutableBarSeries.of(mergedBars, "updated " + symbol);
+    BarSeries complete = ImmutableBarSeries.ofSorted(mergedBars, "updated " + symbol);
 
     Preconditions.checkState(complete.getBarCount() >= s3Data.getBarCount());
 
@@ -120,10 +117,34 @@ public class LoadTask extends Loader<LoadTask> {
     throw new UnsupportedOperationException("symbol not supported: " + getSymbol());
   }
 
+  /** Listing metadata for the symbol's S3 object, if known. */
+  public LoadTask s3Object(S3Loader.SymbolObject s3Object) {
+    this.s3Object = s3Object;
+    return this;
+  }
+
+  /**
+   * True if the S3 object was written after the last closed trading day ended, in which case it
+   * already contains that day.
+   */
+  boolean isUpToDate(S3Loader.SymbolObject obj) {
+    if (obj == null || obj.getLastModified() == null) {
+      return false;
+    }
+    ZoneId zone = symbol.isCrypto() ? Zones.UTC : Zones.NYC;
+    Instant dayClosed = getLastClosedTradingDay().plusDays(1).atStartOfDay(zone).toInstant();
+    return !obj.getLastModified().isBefore(dayClosed);
+  }
+
   public void execute() {
     logger.atInfo().log("********** %s **********", getSymbol());
 
-    var s3Loader = new S3Loader(getDb()).symbol(getSymbol());
+    if (isUpToDate(s3Object)) {
+      logger.atInfo().log("%s is current as of %s", symbol, s3Object.getLastModified());
+      return;
+    }
+
+    var s3Loader = new S3Loader(getDb()).symbol(getSymbol()).s3Object(s3Object);
 
     var s3Data = s3Loader.loadAll();
 
@@ -141,6 +162,12 @@ public class LoadTask extends Loader<LoadTask> {
       return;
     }
 
+    if (newBarCount == 0) {
+      // nothing changed, so there is no need to re-upload the same data
+      logger.atInfo().log("no new data for %s", symbol);
+      return;
+    }
+
     if (completeBarSeries == null || completeBarSeries.isEmpty()) {
       // do not write empty data!
       logger.atWarning().log("BarSeries data for %s is null/empty...will not write to S3", symbol);
@@ -155,7 +182,7 @@ public class LoadTask extends Loader<LoadTask> {
       return;
     }
 
-    s3Loader.writeS3(completeBarSeries);
+    s3Loader.writeS3(completeBarSeries, firstNewDate);
   }
 
   @Override
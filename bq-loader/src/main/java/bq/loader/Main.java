@@ -26,8 +26,14 @@ public class Main {
     logger.atInfo().log("WORKDIR         : %s", f);
     logger.atInfo().log("BQ_S3_BUCKET       : %s", ProjectConfig.get().getS3Bucket());
 
+    int concurrency = Integer.parseInt(Config.get("LOAD_CONCURRENCY").orElse("1").trim());
+    logger.atInfo().log("LOAD_CONCURRENCY   : %s", concurrency);
+
     do {
-      new MultiLoadTask(db).symbols(Config.get("SYMBOLS").orElse(null)).execute();
+      new MultiLoadTask(db)
+          .symbols(Config.get("SYMBOLS").orElse(null))
+          .concurrency(concurrency)
+          .execute();
     } while (continueRunning());
   }
 
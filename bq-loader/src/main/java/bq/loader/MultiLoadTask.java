@@ -1,12 +1,24 @@
 package bq.loader;
 
 import bq.duckdb.DuckDb;
+import bq.util.BqException;
 import bq.util.Symbol;
 import com.google.common.base.CharMatcher;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.flogger.FluentLogger;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 public class MultiLoadTask {
 
@@ -14,6 +26,9 @@ public class MultiLoadTask {
   DuckDb db;
   List<Symbol> symbols = Lists.newArrayList();
   boolean updateAll = true;
+  Map<Symbol, S3Loader.SymbolObject> manifest = Maps.newHashMap();
+  int concurrency = 1;
+  int providerConcurrency = 4;
 
   public MultiLoadTask(DuckDb db) {
     this.db = db;
@@ -50,12 +65,29 @@ public class MultiLoadTask {
     return this;
   }
 
-  public void execute() {
+  /**
+   * Maximum number of symbols loaded at once. With a value greater than 1, each symbol is loaded on
+   * its own virtual thread with its own in-memory DuckDb instead of the shared one.
+   */
+  public MultiLoadTask concurrency(int concurrency) {
+    Preconditions.checkArgument(concurrency > 0, "concurrency must be > 0");
+    this.concurrency = concurrency;
+    return this;
+  }
+
+  /** Maximum number of symbols loaded at once from any one data provider. */
+  public MultiLoadTask providerConcurrency(int providerConcurrency) {
+    Preconditions.checkArgument(providerConcurrency > 0, "providerConcurrency must be > 0");
+    this.providerConcurrency = providerConcurrency;
+    return this;
+  }
+
+  public List<Result> execute() {
 
     S3Loader s3Loader = new S3Loader(db);
     if (!s3Loader.isS3Available()) {
       logger.atWarning().log("cannot connect to s3");
-      return;
+      return List.of();
     }
 
     if (updateAll) {
@@ -63,20 +95,135 @@ public class MultiLoadTask {
           .fetchSymbolsForUpdate()
           .forEach(
               it -> {
-                symbol(it);
+                manifest.put(it.getSymbol(), it);
+                symbol(it.getSymbol());
               });
     }
 
-    List<Symbol> symbols = Lists.newArrayList(this.symbols);
+    // two concurrent loads of the same symbol would race on the same S3 object
+    List<Symbol> symbols = Lists.newArrayList(Sets.newLinkedHashSet(this.symbols));
 
-    symbols.stream()
-        .forEach(
-            symbol -> {
-              try {
-                new LoadTask(db).symbol(symbol).execute();
-              } catch (RuntimeException e) {
-                logger.atWarning().withCause(e).log("problem processing %s", symbol);
-              }
-            });
+    long t0 = System.currentTimeMillis();
+    List<Result> results =
+        concurrency > 1 ? executeConcurrently(symbols) : executeSequentially(symbols);
+
+    long failed = results.stream().filter(r -> !r.isSuccess()).count();
+    logger.atInfo().log(
+        "loaded %s symbols in %sms (%s failed)",
+        results.size(), System.currentTimeMillis() - t0, failed);
+    results.stream()
+        .filter(r -> !r.isSuccess())
+        .forEach(r -> logger.atWarning().log("failed: %s (%s)", r.getSymbol(), r.error));
+
+    return results;
+  }
+
+  List<Result> executeSequentially(List<Symbol> symbols) {
+    List<Result> results = Lists.newArrayList();
+    symbols.forEach(symbol -> results.add(load(db, symbol)));
+    return results;
+  }
+
+  List<Result> executeConcurrently(List<Symbol> symbols) {
+    // provider permits are taken before global ones so that a task blocked on a busy provider
+    // does not hold a slot that a task for another provider could use
+    Semaphore permits = new Semaphore(concurrency);
+    Map<String, Semaphore> providerPermits = Maps.newConcurrentMap();
+
+    List<Future<Result>> futures = Lists.newArrayList();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (Symbol symbol : symbols) {
+        Semaphore providerPermit =
+            providerPermits.computeIfAbsent(
+                getProviderName(symbol), p -> new Semaphore(providerConcurrency));
+        futures.add(
+            executor.submit(
+                () -> {
+                  providerPermit.acquire();
+                  try {
+                    permits.acquire();
+                    try (DuckDb workerDb = DuckDb.createInMemory()) {
+                      return load(workerDb, symbol);
+                    } finally {
+                      permits.release();
+                    }
+                  } finally {
+                    providerPermit.release();
+                  }
+                }));
+      }
+    }
+
+    List<Result> results = Lists.newArrayList();
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        results.add(futures.get(i).get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new BqException(e);
+      } catch (ExecutionException e) {
+        Result r = new Result(symbols.get(i));
+        r.error = e.getCause();
+        results.add(r);
+      }
+    }
+    return results;
+  }
+
+  Result load(DuckDb db, Symbol symbol) {
+    Result result = new Result(symbol);
+    long t0 = System.currentTimeMillis();
+    try {
+      new LoadTask(db).symbol(symbol).s3Object(manifest.get(symbol)).execute();
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log("problem processing %s", symbol);
+      result.error = e;
+    }
+    result.elapsedMillis = System.currentTimeMillis() - t0;
+    logger.atInfo().log("processed %s in %sms", symbol, result.elapsedMillis);
+    return result;
+  }
+
+  static String getProviderName(Symbol symbol) {
+    if (symbol.isStock() || symbol.isIndex()) {
+      return "polygon";
+    } else if (symbol.isCrypto()) {
+      return "coinbase";
+    }
+    return "other";
+  }
+
+  public static class Result {
+    Symbol symbol;
+    long elapsedMillis;
+    Throwable error;
+
+    Result(Symbol symbol) {
+      this.symbol = symbol;
+    }
+
+    public Symbol getSymbol() {
+      return symbol;
+    }
+
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+
+    public boolean isSuccess() {
+      return error == null;
+    }
+
+    public Optional<Throwable> getError() {
+      return Optional.ofNullable(error);
+    }
+
+    public String toString() {
+      return MoreObjects.toStringHelper("Result")
+          .add("symbol", symbol)
+          .add("elapsedMillis", elapsedMillis)
+          .add("success", isSuccess())
+          .toString();
+    }
   }
 }
@@ -0,0 +1,218 @@
+package bq.loader;
+
+import bq.util.BqException;
+import bq.util.Config;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.flogger.FluentLogger;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * Local disk cache of S3 objects. Each object is stored at {dir}/{bucket}/{key} next to a
+ * {key}.etag file holding the ETag it was downloaded with. A cached file is used as long as its
+ * ETag and size still match S3, which costs one HEAD request, or nothing if the caller already
+ * has the metadata from a listing.
+ *
+ * <p>Once the cache grows past maxBytes, the least recently used files are deleted. Files returned
+ * by get() are pinned until the caller passes them to release(), and pinned files are never
+ * evicted, even if a single file is larger than maxBytes.
+ */
+public class S3Cache {
+
+  static FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final String ETAG_SUFFIX = ".etag";
+  static final long DEFAULT_MAX_BYTES = 2048L * 1024 * 1024;
+
+  File dir;
+  long maxBytes = DEFAULT_MAX_BYTES;
+  Supplier<S3Client> client = S3Loader::getClient;
+
+  // files handed out by get() and not yet released, guarded by this
+  final Multiset<File> pinned = HashMultiset.create();
+
+  public static S3Cache create() {
+    S3Cache cache = new S3Cache();
+    cache.dir = new File(Config.getConfigDir(), "cache/s3");
+    cache.maxBytes =
+        Config.get("BQ_S3_CACHE_MAX_MB")
+            .map(mb -> Long.parseLong(mb.trim()) * 1024 * 1024)
+            .orElse(DEFAULT_MAX_BYTES);
+    return cache;
+  }
+
+  public S3Cache dir(File dir) {
+    this.dir = dir;
+    return this;
+  }
+
+  public S3Cache maxBytes(long maxBytes) {
+    Preconditions.checkArgument(maxBytes >= 0, "maxBytes must be >= 0");
+    this.maxBytes = maxBytes;
+    return this;
+  }
+
+  public File getDir() {
+    return dir;
+  }
+
+  /**
+   * Returns a local copy of the object, revalidating with a HEAD request. Empty if the object
+   * does not exist. The file must be passed to release() once it has been read.
+   */
+  public Optional<File> get(String bucket, String key) {
+    HeadObjectResponse head;
+    try {
+      head = client.get().headObject(c -> c.bucket(bucket).key(key));
+    } catch (NoSuchKeyException e) {
+      invalidate(bucket, key);
+      return Optional.empty();
+    } catch (S3Exception e) {
+      if (e.statusCode() == 404) {
+        invalidate(bucket, key);
+        return Optional.empty();
+      }
+      throw e;
+    }
+    return Optional.of(get(bucket, key, head.eTag(), head.contentLength()));
+  }
+
+  /**
+   * Returns a local copy of an object whose current ETag and size are already known. The file
+   * must be passed to release() once it has been read.
+   */
+  public File get(String bucket, String key, String etag, long size) {
+    File f = getFile(bucket, key);
+    // pin before checking, so that a concurrent evict() cannot delete the file once it is current
+    pin(f);
+    try {
+      if (isCurrent(f, etag, size)) {
+        logger.atFine().log("cache hit: s3://%s/%s", bucket, key);
+        // mtime records last use for LRU eviction
+        f.setLastModified(System.currentTimeMillis());
+        return f;
+      }
+      download(bucket, key, f);
+      evict();
+      return f;
+    } catch (RuntimeException e) {
+      release(f);
+      throw e;
+    }
+  }
+
+  synchronized void pin(File f) {
+    pinned.add(f);
+  }
+
+  /** Allows a file returned by get() to be evicted again. */
+  public synchronized void release(File f) {
+    pinned.remove(f);
+  }
+
+  boolean isCurrent(File f, String etag, long size) {
+    if (etag == null || !f.exists() || f.length() != size) {
+      return false;
+    }
+    return readEtag(f).map(etag::equals).orElse(false);
+  }
+
+  public void invalidate(String bucket, String key) {
+    File f = getFile(bucket, key);
+    f.delete();
+    etagFile(f).delete();
+  }
+
+  File getFile(String bucket, String key) {
+    return new File(new File(dir, bucket), key);
+  }
+
+  static File etagFile(File f) {
+    return new File(f.getParentFile(), f.getName() + ETAG_SUFFIX);
+  }
+
+  static Optional<String> readEtag(File f) {
+    File etag = etagFile(f);
+    if (!etag.exists()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(Files.readString(etag.toPath(), StandardCharsets.UTF_8).trim());
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  void download(String bucket, String key, File f) {
+    logger.atInfo().log("downloading s3://%s/%s to %s", bucket, key, f);
+    f.getParentFile().mkdirs();
+
+    // download to a temp file and move it into place, so that concurrent readers never see a
+    // partial file
+    Path tmp = new File(f.getParentFile(), f.getName() + "." + UUID.randomUUID() + ".tmp").toPath();
+    try {
+      GetObjectResponse response = client.get().getObject(c -> c.bucket(bucket).key(key), tmp);
+      Files.move(tmp, f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      Files.writeString(etagFile(f).toPath(), response.eTag(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new BqException(e);
+    } finally {
+      tmp.toFile().delete();
+    }
+  }
+
+  /**
+   * Deletes least recently used files until the cache is within maxBytes. Pinned files are skipped
+   * but still count towards the total.
+   */
+  synchronized void evict() {
+    if (!dir.exists()) {
+      return;
+    }
+    List<File> files = Lists.newArrayList();
+    try (Stream<Path> s = Files.walk(dir.toPath())) {
+      s.map(Path::toFile)
+          .filter(File::isFile)
+          .filter(f -> !f.getName().endsWith(ETAG_SUFFIX) && !f.getName().endsWith(".tmp"))
+          .forEach(files::add);
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("could not scan %s", dir);
+      return;
+    }
+    long total = files.stream().mapToLong(File::length).sum();
+    if (total <= maxBytes) {
+      return;
+    }
+    files.sort(Comparator.comparingLong(File::lastModified));
+    for (File f : files) {
+      if (total <= maxBytes) {
+        break;
+      }
+      if (pinned.contains(f)) {
+        continue;
+      }
+      total -= f.length();
+      logger.atFine().log("evicting %s", f);
+      f.delete();
+      etagFile(f).delete();
+    }
+  }
+}
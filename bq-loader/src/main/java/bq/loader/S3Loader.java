@@ -3,15 +3,21 @@ package bq.loader;
 import bq.duckdb.DuckDb;
 import bq.ducktape.BarSeriesTable;
 import bq.ducktape.DuckTape;
+import bq.util.BqException;
+import bq.util.Config;
 import bq.util.ProjectConfig;
 import bq.util.S;
 import bq.util.Symbol;
 import bq.util.ta4j.ImmutableBarSeries;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Splitter;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.flogger.FluentLogger;
+import java.io.File;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.Comparator;
 import java.util.List;
@@ -34,9 +40,25 @@ public class S3Loader extends Loader<S3Loader> {
   static FluentLogger logger = FluentLogger.forEnclosingClass();
   static Map<String, Boolean> s3AvailabilityMap = Maps.newHashMap();
 
+  /**
+   * CSV stores one file per symbol at {type}/1d/{ticker}.csv. PARQUET stores a hive-partitioned
+   * dataset under parquet/1d/type={type}/ticker={ticker}/year={year}/.
+   */
+  public enum Format {
+    CSV,
+    PARQUET
+  }
+
+  static final String PARQUET_PREFIX = "parquet/1d";
+
   String bucket;
+  String rootUrl;
+  SymbolObject s3Object;
+  boolean useCache = Config.get("BQ_S3_CACHE").orElse("true").trim().equalsIgnoreCase("true");
+  Format format = Format.valueOf(Config.get("BQ_S3_FORMAT").orElse("csv").trim().toUpperCase());
 
   static final Supplier<S3Client> supplier = Suppliers.memoize(S3Loader::createClient);
+  static final Supplier<S3Cache> cacheSupplier = Suppliers.memoize(S3Cache::create);
 
   public S3Loader(DuckDb d) {
     super(d);
@@ -44,21 +66,48 @@ public class S3Loader extends Loader<S3Loader> {
 
   @Override
   public BarSeries loadAll() {
+    return load(null, null);
+  }
+
+  /** Loads bars between from and to (inclusive). Either bound may be null. */
+  @Override
+  public BarSeries fetch(LocalDate from, LocalDate to) {
+    return load(from, to);
+  }
+
+  BarSeries load(LocalDate from, LocalDate to) {
 
     String tempTableName = "temp_" + System.currentTimeMillis();
+    File cachedFile = null;
     try {
-      db.s3Extension().useCredentialChain();
-
-      String s3Url = getS3UrlForSymbol();
-      logger.atInfo().log("loading %s from %s", getSymbol(), s3Url);
+      if (isS3()) {
+        db.s3Extension().useCredentialChain();
+      }
 
-      if (!s3FileExists()) {
-        logger.atInfo().log("not found: %s", getS3UrlForSymbol());
+      String url = format == Format.PARQUET ? getParquetGlobForSymbol() : getS3UrlForSymbol();
+      logger.atInfo().log("loading %s from %s", getSymbol(), url);
+
+      if (isCacheEnabled()) {
+        // the HEAD request made by the cache doubles as the existence check
+        String key = s3Key(getSymbol());
+        Optional<File> cached =
+            s3Object != null && key.equals(s3Object.getKey())
+                ? Optional.of(getCache().get(getBucket(), key, s3Object.eTag, s3Object.size))
+                : getCache().get(getBucket(), key);
+        if (cached.isEmpty()) {
+          logger.atInfo().log("not found: %s", url);
+          return ImmutableBarSeries.of(List.of(), getSymbol().getName());
+        }
+        cachedFile = cached.get();
+        url = cachedFile.getAbsolutePath();
+      } else if (s3Object == null && !exists()) {
+        logger.atInfo().log("not found: %s", url);
 
         return ImmutableBarSeries.of(List.of(), getSymbol().getName());
       }
 
-      String sql = String.format("CREATE TABLE %s AS SELECT * FROM '%s'", tempTableName, s3Url);
+      String sql =
+          String.format("CREATE TABLE %s AS %s", tempTableName, selectSql(url, from, to));
 
       logger.atFine().log("%s", sql);
       getDb().template().execute(sql);
@@ -67,12 +116,93 @@ public class S3Loader extends Loader<S3Loader> {
 
       return bs;
     } finally {
+      if (cachedFile != null) {
+        getCache().release(cachedFile);
+      }
       if (S.isNotBlank(tempTableName)) {
         getDb().template().execute("drop table if exists " + tempTableName);
       }
     }
   }
 
+  /**
+   * With the Parquet layout, the year partition and the date range are both pushed down, so only
+   * the matching files and row groups are read.
+   */
+  String selectSql(String url, LocalDate from, LocalDate to) {
+    List<String> where = Lists.newArrayList();
+    if (from != null) {
+      where.add(String.format("date >= DATE '%s'", from));
+    }
+    if (to != null) {
+      where.add(String.format("date <= DATE '%s'", to));
+    }
+    String source = String.format("'%s'", url);
+    if (format == Format.PARQUET) {
+      source = String.format("read_parquet('%s', hive_partitioning=true)", url);
+      if (from != null) {
+        where.add(String.format("year >= %d", from.getYear()));
+      }
+      if (to != null) {
+        where.add(String.format("year <= %d", to.getYear()));
+      }
+    }
+    String sql = String.format("SELECT date, open, high, low, close, volume FROM %s", source);
+    if (!where.isEmpty()) {
+      sql = sql + " WHERE " + String.join(" AND ", where);
+    }
+    return sql + " ORDER BY date";
+  }
+
+  public S3Loader format(Format format) {
+    this.format = format;
+    return this;
+  }
+
+  /**
+   * Sets the root that symbol files are read from and written to. Defaults to s3://{bucket}, but
+   * may be a local directory.
+   */
+  public S3Loader rootUrl(String rootUrl) {
+    this.rootUrl = rootUrl;
+    return this;
+  }
+
+  public String getRootUrl() {
+    if (S.isNotBlank(rootUrl)) {
+      return CharMatcher.is('/').trimTrailingFrom(rootUrl);
+    }
+    return String.format("s3://%s", getBucket());
+  }
+
+  boolean isS3() {
+    return getRootUrl().startsWith("s3://");
+  }
+
+  /**
+   * Supplies listing metadata for the symbol's object, which saves the per-symbol existence
+   * check and cache revalidation.
+   */
+  public S3Loader s3Object(SymbolObject s3Object) {
+    this.s3Object = s3Object;
+    return this;
+  }
+
+  /** Enables or disables the local disk cache of CSV symbol files. */
+  public S3Loader cache(boolean useCache) {
+    this.useCache = useCache;
+    return this;
+  }
+
+  boolean isCacheEnabled() {
+    // a Parquet dataset spans many objects, and row-group pushdown already limits what is read
+    return useCache && isS3() && format == Format.CSV;
+  }
+
+  public static S3Cache getCache() {
+    return cacheSupplier.get();
+  }
+
   public String getBucket() {
     if (S.isNotBlank(bucket)) {
       return bucket;
@@ -81,7 +211,26 @@ public class S3Loader extends Loader<S3Loader> {
   }
 
   String getS3UrlForSymbol() {
-    return String.format("s3://%s/%s", getBucket(), s3Key(getSymbol()));
+    return String.format("%s/%s", getRootUrl(), s3Key(getSymbol()));
+  }
+
+  String getParquetRootUrl() {
+    return String.format("%s/%s", getRootUrl(), PARQUET_PREFIX);
+  }
+
+  String getParquetGlobForSymbol() {
+    return String.format(
+        "%s/type=%s/ticker=%s/*/*.parquet",
+        getParquetRootUrl(), symbolType(getSymbol()), getSymbol().getTicker());
+  }
+
+  boolean exists() {
+    if (isS3() && format == Format.CSV) {
+      return s3FileExists();
+    }
+    String pattern = format == Format.PARQUET ? getParquetGlobForSymbol() : getS3UrlForSymbol();
+    String sql = String.format("select count(*) from glob('%s')", pattern);
+    return getDb().template().queryInt(c -> c.sql(sql)) > 0;
   }
 
   boolean s3FileExists() {
@@ -101,6 +250,15 @@ public class S3Loader extends Loader<S3Loader> {
   }
 
   public void writeS3(BarSeries data) {
+    writeS3(data, null);
+  }
+
+  /**
+   * Writes the bar series. With the Parquet layout only the year partitions from changedFrom
+   * onwards are rewritten; data must still contain every bar in those years. With CSV the whole
+   * file is always rewritten.
+   */
+  public void writeS3(BarSeries data, LocalDate changedFrom) {
 
     // for consistency, we're going to write the bar series to DuckDB in a temp table,
     // then have DuckDb send it to S3
@@ -114,17 +272,44 @@ public class S3Loader extends Loader<S3Loader> {
       tape.appendAll(t, data);
 
       getDb().template().log().query("select * from " + tempTable);
-      String s3Url = getS3UrlForSymbol();
 
-      db.s3Extension().useCredentialChain();
+      if (isS3()) {
+        db.s3Extension().useCredentialChain();
+      }
 
-      String sql =
-          String.format(
-              "COPY (select date,open,high,low,close,volume from %s order by date asc) to '%s'",
-              tempTable, getS3UrlForSymbol());
+      String sql;
+      if (format == Format.PARQUET) {
+        deleteParquetPartitions(changedFrom == null ? Integer.MIN_VALUE : changedFrom.getYear());
+        String where = changedFrom == null ? "" : "where year(date) >= " + changedFrom.getYear();
+        sql =
+            String.format(
+                """
+                COPY (
+                  select date, open, high, low, close, volume,
+                    '%s' as type, '%s' as ticker, year(date) as year
+                  from %s %s order by date asc
+                ) to '%s'
+                (FORMAT PARQUET, PARTITION_BY (type, ticker, year),
+                  OVERWRITE_OR_IGNORE, FILENAME_PATTERN 'data_{i}')
+                """,
+                symbolType(getSymbol()),
+                getSymbol().getTicker(),
+                tempTable,
+                where,
+                getParquetRootUrl());
+      } else {
+        sql =
+            String.format(
+                "COPY (select date,open,high,low,close,volume from %s order by date asc) to '%s'",
+                tempTable, getS3UrlForSymbol());
+      }
 
       logger.atInfo().log("%s", sql);
       getDb().template().execute(sql);
+
+      if (isCacheEnabled()) {
+        getCache().invalidate(getBucket(), s3Key(getSymbol()));
+      }
     } finally {
       if (t != null) {
         logger.atInfo().log("dropping temp table: %s", t);
@@ -133,7 +318,83 @@ public class S3Loader extends Loader<S3Loader> {
     }
   }
 
+  /**
+   * Deletes the files of the symbol's year partitions from fromYear onwards. OVERWRITE_OR_IGNORE
+   * only replaces files with the same name, so a partition rewritten with fewer files than before
+   * would otherwise keep its stale data_N files, and a full rewrite would keep years that are no
+   * longer in the data.
+   */
+  void deleteParquetPartitions(int fromYear) {
+    String symbolPrefix =
+        String.format(
+            "%s/type=%s/ticker=%s/",
+            PARQUET_PREFIX, symbolType(getSymbol()), getSymbol().getTicker());
+    if (isS3()) {
+      String path = getRootUrl().substring("s3://".length());
+      int idx = path.indexOf('/');
+      String bucket = idx < 0 ? path : path.substring(0, idx);
+      String prefix = idx < 0 ? symbolPrefix : path.substring(idx + 1) + "/" + symbolPrefix;
+
+      var s3 = getClient();
+      AtomicReference<String> token = new AtomicReference<String>();
+      ListObjectsV2Response response = null;
+      do {
+        response =
+            s3.listObjectsV2(
+                c -> {
+                  c.bucket(bucket);
+                  c.prefix(prefix);
+                  c.continuationToken(token.get());
+                });
+        for (S3Object obj : response.contents()) {
+          if (isPartitionFrom(obj.key(), fromYear)) {
+            logger.atInfo().log("deleting s3://%s/%s", bucket, obj.key());
+            s3.deleteObject(
+                x -> {
+                  x.bucket(bucket);
+                  x.key(obj.key());
+                });
+          }
+        }
+        token.set(response.nextContinuationToken());
+      } while (response.isTruncated());
+    } else {
+      File[] years = new File(getRootUrl(), symbolPrefix).listFiles();
+      if (years == null) {
+        return;
+      }
+      for (File year : years) {
+        if (year.isDirectory() && isPartitionFrom(year.getName(), fromYear)) {
+          File[] files = year.listFiles();
+          for (File f : files == null ? new File[0] : files) {
+            logger.atInfo().log("deleting %s", f);
+            if (!f.delete()) {
+              throw new BqException("could not delete " + f);
+            }
+          }
+          year.delete();
+        }
+      }
+    }
+  }
+
+  // true if the path has a year={year} partition at or after fromYear
+  static boolean isPartitionFrom(String path, int fromYear) {
+    String year = parsePartitions(path).get("year");
+    if (year == null) {
+      return false;
+    }
+    try {
+      return Integer.parseInt(year) >= fromYear;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
   public boolean isS3Available() {
+    if (!isS3()) {
+      return true;
+    }
     Boolean b = s3AvailabilityMap.get(getBucket());
     if (b != null) {
       return b;
@@ -195,12 +456,13 @@ public class S3Loader extends Loader<S3Loader> {
     return true;
   }
 
-  @Override
-  public BarSeries fetch(LocalDate from, LocalDate to) {
-    return ImmutableBarSeries.empty();
-  }
-
-  List<Symbol> fetchSymbolsForUpdate() {
+  /**
+   * Lists the bucket and returns one entry per symbol, oldest first, with the listing metadata
+   * of its object. Only objects in the configured format are considered, so that one layout
+   * cannot make the other look up to date. For the Parquet layout, where a symbol spans several
+   * objects, the most recently modified one is used.
+   */
+  List<SymbolObject> fetchSymbolsForUpdate() {
 
     var s3 = getClient();
 
@@ -219,18 +481,81 @@ public class S3Loader extends Loader<S3Loader> {
       token.set(response.nextContinuationToken());
     } while (response.isTruncated());
 
-    return list.stream()
+    Map<Symbol, SymbolObject> manifest = Maps.newHashMap();
+    list.stream()
         .filter(S3Loader::filterObjects)
-        .sorted(byLastModified())
-        .flatMap(m -> extractSymbol(m.key()).stream())
+        .filter(obj -> isFormat(obj.key(), format))
+        .forEach(
+            obj ->
+                extractSymbol(obj.key())
+                    .ifPresent(
+                        symbol ->
+                            manifest.merge(
+                                symbol,
+                                SymbolObject.of(symbol, obj),
+                                (a, b) -> a.lastModified.isAfter(b.lastModified) ? a : b)));
+
+    return manifest.values().stream()
+        .sorted(Comparator.comparing(SymbolObject::getLastModified))
         .toList();
   }
 
+  /** S3 listing metadata for a symbol's object. */
+  public static class SymbolObject {
+    Symbol symbol;
+    String key;
+    long size;
+    String eTag;
+    Instant lastModified;
+
+    static SymbolObject of(Symbol symbol, S3Object obj) {
+      SymbolObject so = new SymbolObject();
+      so.symbol = symbol;
+      so.key = obj.key();
+      so.size = obj.size();
+      so.eTag = obj.eTag();
+      so.lastModified = obj.lastModified();
+      return so;
+    }
+
+    public Symbol getSymbol() {
+      return symbol;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public String getETag() {
+      return eTag;
+    }
+
+    public Instant getLastModified() {
+      return lastModified;
+    }
+
+    public String toString() {
+      return MoreObjects.toStringHelper("SymbolObject")
+          .add("symbol", symbol)
+          .add("key", key)
+          .add("size", size)
+          .add("lastModified", lastModified)
+          .toString();
+    }
+  }
+
   public static boolean filterObjects(S3Object obj) {
     String key = obj.key();
     if (key == null) {
       return false;
     }
+    if (key.startsWith(PARQUET_PREFIX + "/")) {
+      return key.endsWith(".parquet");
+    }
     if (!key.endsWith(".csv")) {
       return false;
     }
@@ -246,10 +571,20 @@ public class S3Loader extends Loader<S3Loader> {
     return true;
   }
 
+  /** True if the key belongs to the given storage layout. */
+  static boolean isFormat(String key, Format format) {
+    return format == Format.PARQUET
+        ? key.startsWith(PARQUET_PREFIX + "/")
+        : !key.startsWith(PARQUET_PREFIX + "/");
+  }
+
   public static Optional<Symbol> extractSymbol(String path) {
     if (path == null) {
       return Optional.empty();
     }
+    if (path.startsWith(PARQUET_PREFIX + "/")) {
+      return extractParquetSymbol(path);
+    }
     if (path.endsWith(".csv")) {
       path = path.substring(0, path.length() - 4);
     } else {
@@ -290,23 +625,43 @@ public class S3Loader extends Loader<S3Loader> {
     return Optional.empty();
   }
 
-  static String s3Key(Symbol symbol) {
+  // parquet/1d/type={type}/ticker={ticker}/year={year}/data_0.parquet
+  static Optional<Symbol> extractParquetSymbol(String path) {
+    Map<String, String> partitions = parsePartitions(path);
+    Map<String, String> prefixes =
+        Map.of("crypto", "X", "stocks", "S", "indices", "I", "indicators", "Q");
+    String prefix = prefixes.get(partitions.getOrDefault("type", ""));
+    String ticker = partitions.get("ticker");
+    if (prefix == null || S.isBlank(ticker)) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(Symbol.parse(String.format("%s:%s", prefix, ticker)));
+    } catch (RuntimeException e) {
+      return Optional.empty();
+    }
+  }
+
+  // hive partitions (name=value) in the path
+  static Map<String, String> parsePartitions(String path) {
+    Map<String, String> partitions = Maps.newHashMap();
+    for (String part : Splitter.on("/").split(path)) {
+      int idx = part.indexOf('=');
+      if (idx > 0) {
+        partitions.put(part.substring(0, idx), part.substring(idx + 1));
+      }
+    }
+    return partitions;
+  }
+
+  static String symbolType(Symbol symbol) {
     Map<String, String> map =
         Map.of("X", "crypto", "S", "stocks", "I", "indices", "Q", "indicators");
-    String type = map.get(symbol.getQualifier().orElse("S"));
-    return String.format("%s/1d/%s.csv", type, symbol.getTicker());
+    return map.get(symbol.getQualifier().orElse("S"));
   }
 
-  static Comparator<S3Object> byLastModified() {
-    Comparator<S3Object> x =
-        new Comparator<S3Object>() {
-
-          @Override
-          public int compare(S3Object o1, S3Object o2) {
-            return o1.lastModified().compareTo(o2.lastModified());
-          }
-        };
-    return x;
+  static String s3Key(Symbol symbol) {
+    return String.format("%s/1d/%s.csv", symbolType(symbol), symbol.getTicker());
   }
 
   public static S3Client getClient() {
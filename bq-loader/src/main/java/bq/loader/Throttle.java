@@ -1,45 +1,85 @@
 package bq.loader;
 
+import bq.util.Config;
 import bq.util.Sleep;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import com.google.common.flogger.FluentLogger;
-import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Token-bucket rate limiter. Each acquire() reserves the next free slot with a CAS and then sleeps
+ * until that slot arrives, so it is safe to share across threads (including virtual threads) and
+ * never holds a lock while waiting. Permits are refilled continuously at 60/rpm second intervals
+ * rather than once per minute.
+ *
+ * <p>Limits are per API account, not per loader instance, so providers should use the shared
+ * instance returned by forProvider().
+ */
 public class Throttle {
 
   static FluentLogger logger = FluentLogger.forEnclosingClass();
-  int maxRpm = 5;
 
-  ZonedDateTime resetAt = null;
-  AtomicInteger count = new AtomicInteger();
+  static final Map<String, Throttle> providers = Maps.newConcurrentMap();
 
-  public static Throttle rpm(int rpm) {
-    Throttle t = new Throttle();
-    t.maxRpm = rpm;
-    return t;
+  final long intervalNanos;
+  final long burstNanos;
+
+  // theoretical arrival time of the next request if requests were perfectly spaced
+  final AtomicLong nextFree = new AtomicLong(Long.MIN_VALUE);
+
+  Throttle(double requestsPerMinute, int burst) {
+    Preconditions.checkArgument(requestsPerMinute > 0, "requestsPerMinute must be > 0");
+    Preconditions.checkArgument(burst > 0, "burst must be > 0");
+    this.intervalNanos = (long) (TimeUnit.MINUTES.toNanos(1) / requestsPerMinute);
+    this.burstNanos = (burst - 1) * intervalNanos;
+  }
+
+  public static Throttle rpm(double rpm) {
+    return new Throttle(rpm, 1);
+  }
+
+  public static Throttle rps(double rps) {
+    return new Throttle(rps * 60, 1);
+  }
+
+  /**
+   * Returns the throttle shared by all users of the given provider. The rate can be overridden
+   * with the <provider>_RPM config property, e.g. POLYGON_RPM=5.
+   */
+  public static Throttle forProvider(String provider, double defaultRpm) {
+    return providers.computeIfAbsent(
+        provider,
+        p -> {
+          double rpm =
+              Config.get(p.toUpperCase() + "_RPM").map(Double::parseDouble).orElse(defaultRpm);
+          logger.atInfo().log("rate limit for %s: %s rpm", p, rpm);
+          return rpm(rpm);
+        });
   }
 
   public void acquire() {
-    if (resetAt == null) {
-      resetAt = ZonedDateTime.now().plus(1, ChronoUnit.MINUTES);
-    }
-    if (ZonedDateTime.now().isAfter(resetAt)) {
-      count.set(0);
-      resetAt = ZonedDateTime.now().plus(1, ChronoUnit.MINUTES);
+    long waitNanos = reserve(System.nanoTime());
+    if (waitNanos > 0) {
+      if (waitNanos > TimeUnit.SECONDS.toNanos(1)) {
+        logger.atInfo().log(
+            "pausing %dms for rate limit", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+      }
+      // round up so that we never wake before the slot
+      Sleep.sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos + 999_999));
     }
-    if (count.get() >= maxRpm) {
-      long wait = resetAt.toEpochSecond() - ZonedDateTime.now().toEpochSecond() + 1;
-      if (wait > 0) {
-        logger.atInfo().log("pausing %d seconds for rate limit", wait);
-        Sleep.sleep(wait, ChronoUnit.SECONDS);
-        if (ZonedDateTime.now().isAfter(resetAt)) {
-          resetAt = ZonedDateTime.now().plus(1, ChronoUnit.MINUTES);
-          count.set(1);
-          return;
-        }
+  }
+
+  /** Reserves a permit and returns how long the caller must wait before using it. */
+  long reserve(long now) {
+    while (true) {
+      long prev = nextFree.get();
+      long start = Math.max(prev, now - burstNanos);
+      if (nextFree.compareAndSet(prev, start + intervalNanos)) {
+        return start - now;
       }
     }
-    count.incrementAndGet();
   }
 }
@@ -1,24 +1,21 @@
 package bq.loader.polygon;
 
 import bq.duckdb.DuckDb;
+import bq.loader.Backfill;
+import bq.loader.BarDecoder;
 import bq.loader.Loader;
 import bq.loader.Throttle;
 import bq.util.Config;
-import bq.util.Zones;
+import bq.util.Json;
 import bq.util.ta4j.Bars;
-import bq.util.ta4j.ImmutableBar;
+import bq.util.ta4j.ColumnarBarSeries;
 import bq.util.ta4j.ImmutableBarSeries;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.google.common.collect.Lists;
 import com.google.common.flogger.FluentLogger;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
-import java.util.Optional;
 import kong.unirest.core.HttpResponse;
 import kong.unirest.core.Unirest;
 import org.ta4j.core.Bar;
@@ -26,53 +23,54 @@ import org.ta4j.core.BarSeries;
 
 public class PolygonDataProvider extends Loader<PolygonDataProvider> {
 
-  Throttle throttle = Throttle.rpm(10);
+  static final String PROVIDER = "polygon";
+  static final int DEFAULT_RPM = 10;
+  static final int WINDOW_DAYS = 1000;
+  static final int BACKFILL_PARALLELISM = 2;
+  static final LocalDate HISTORY_START = LocalDate.of(2000, 1, 1);
+
+  Throttle throttle = getThrottle();
   FluentLogger logger = FluentLogger.forEnclosingClass();
 
   public PolygonDataProvider(DuckDb db) {
     super(db);
   }
 
-  Optional<Double> asDouble(JsonNode n, String f) {
-    String s = n.path(f).asText(null);
-    if (s == null) {
-      return Optional.empty();
-    }
-    try {
-      BigDecimal bd = new BigDecimal(s);
-      bd = bd.setScale(2, RoundingMode.HALF_UP);
-      return Optional.of(bd.doubleValue());
-    } catch (Exception e) {
-      return Optional.empty();
-    }
+  /** Throttle shared by every request made with the Polygon API key. */
+  public static Throttle getThrottle() {
+    return Throttle.forProvider(PROVIDER, DEFAULT_RPM);
   }
 
-  Bar toBar(JsonNode record) {
-
-    ZonedDateTime dt =
-        ZonedDateTime.ofInstant(Instant.ofEpochMilli(record.path("t").asLong()), Zones.UTC);
-    LocalDate d = dt.toLocalDate();
-
-    return ImmutableBar.create(
-        d,
-        asDouble(record, "o").orElse(null),
-        asDouble(record, "h").orElse(null),
-        asDouble(record, "l").orElse(null),
-        asDouble(record, "c").orElse(null),
-        asDouble(record, "v").orElse(null));
+  /**
+   * Prices are rounded to cents (HALF_UP) exactly as they were when the JSON text was decoded
+   * through BigDecimal. Most values already have at most 2 decimals and are returned as-is; only
+   * the rest go through BigDecimal.
+   */
+  static double round2(double d) {
+    if (!Double.isFinite(d)) {
+      return d;
+    }
+    if (Math.rint(d * 100) / 100 == d) {
+      return d;
+    }
+    // valueOf() uses the shortest decimal text of the double, which is what the decoder parsed
+    return BigDecimal.valueOf(d).setScale(2, RoundingMode.HALF_UP).doubleValue();
   }
 
-  List<Bar> toBars(JsonNode response) {
-
-    List<Bar> bars = Lists.newArrayList();
-    response
-        .path("results")
-        .forEach(
-            n -> {
-              Bar b = toBar(n);
-              bars.add(b);
-            });
-    return bars;
+  ColumnarBarSeries toBarSeries(byte[] response) {
+    ColumnarBarSeries.Builder builder = ColumnarBarSeries.newBuilder();
+    BarDecoder.polygon()
+        .decode(
+            response,
+            (ticker, epochDay, open, high, low, close, volume) ->
+                builder.add(
+                    epochDay,
+                    round2(open),
+                    round2(high),
+                    round2(low),
+                    round2(close),
+                    round2(volume)));
+    return builder.build(getSymbol().getName());
   }
 
   public BarSeries fetch(LocalDate from, LocalDate to) {
@@ -82,6 +80,14 @@ public class PolygonDataProvider extends Loader<PolygonDataProvider> {
     if (from == null) {
       from = LocalDate.now().minus(30, ChronoUnit.DAYS);
     }
+    return fetchSeries(from, to);
+  }
+
+  List<Bar> fetchBars(LocalDate from, LocalDate to) {
+    return Bars.toList(fetchSeries(from, to));
+  }
+
+  BarSeries fetchSeries(LocalDate from, LocalDate to) {
     String fixedSymbol = getSymbol().toString();
     if (fixedSymbol.equals("I:DJIA")) {
       fixedSymbol = "DJIA";
@@ -95,18 +101,19 @@ public class PolygonDataProvider extends Loader<PolygonDataProvider> {
             "https://api.polygon.io/v2/aggs/ticker/%s/range/1/day/%s/%s?sort=asc&adjusted=true",
             fixedSymbol, from.toString(), to.toString());
     logger.atInfo().log("GET %s", url);
-    HttpResponse<JsonNode> response =
+    HttpResponse<byte[]> response =
         Unirest.get(url)
             .header("Authorization", "Bearer " + Config.get("POLYGON_API_KEY").orElse("misisng"))
-            .asObject(JsonNode.class);
+            .asBytes();
 
     if (response.isSuccess()) {
-      return ImmutableBarSeries.of(toBars(response.getBody()));
+      return toBarSeries(response.getBody());
     } else {
       if (response.getStatus() == 403) {
-        String message = response.getBody().path("message").asText();
+        String message = Json.readTree(response.getBody()).path("message").asText();
         if (message.toLowerCase().contains("timeframe")) {
-          ImmutableBarSeries.of(List.of());
+          // the window is older than our plan allows, which is the same as no data
+          return ImmutableBarSeries.empty();
         }
       }
 
@@ -114,21 +121,17 @@ public class PolygonDataProvider extends Loader<PolygonDataProvider> {
     }
   }
 
+  /**
+   * Fetches the full history in windows of WINDOW_DAYS, concurrently. Stops at the first window
+   * with no data.
+   */
   public BarSeries loadAll() {
-    List<Bar> allResults = Lists.newArrayList();
-    LocalDate t1 = LocalDate.now();
-    LocalDate t0 = t1.minus(1000, ChronoUnit.DAYS);
-    List<Bar> results = List.of();
-    do {
-
-      BarSeries page = fetch(t0, t1);
-
-      allResults.addAll(Bars.toList(page));
-      t1 = t0;
-      t0 = t1.minus(1000, ChronoUnit.DAYS);
-
-    } while (!results.isEmpty());
+    List<Bar> allResults =
+        Backfill.fetch(
+            Backfill.windows(HISTORY_START, LocalDate.now(), WINDOW_DAYS),
+            w -> fetchBars(w.getFrom(), w.getTo()),
+            BACKFILL_PARALLELISM);
 
-    return ImmutableBarSeries.of(allResults.stream().sorted().toList(), this.getSymbol().getName());
+    return ImmutableBarSeries.of(allResults, this.getSymbol().getName());
   }
 }
@@ -0,0 +1,83 @@
+package bq.loader;
+
+import bq.util.ta4j.ImmutableBar;
+import com.google.common.collect.Lists;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ta4j.core.Bar;
+
+public class BackfillTest {
+
+  @Test
+  public void testWindows() {
+    LocalDate from = LocalDate.of(2024, 1, 1);
+    LocalDate to = LocalDate.of(2024, 1, 25);
+    List<Backfill.Window> windows = Backfill.windows(from, to, 10);
+
+    Assertions.assertThat(windows).hasSize(3);
+    Assertions.assertThat(windows.get(0).getTo()).isEqualTo(to);
+    Assertions.assertThat(windows.get(0).getFrom()).isEqualTo(LocalDate.of(2024, 1, 16));
+    Assertions.assertThat(windows.get(1).getTo()).isEqualTo(LocalDate.of(2024, 1, 15));
+    Assertions.assertThat(windows.get(2).getFrom()).isEqualTo(from);
+
+    Assertions.assertThat(Backfill.windows(from, from, 10)).hasSize(1);
+    Assertions.assertThat(Backfill.windows(to, from, 10)).isEmpty();
+  }
+
+  @Test
+  public void testFetch() {
+    LocalDate listed = LocalDate.of(2020, 6, 1);
+    AtomicInteger requests = new AtomicInteger();
+
+    // no history before the listing date
+    List<Bar> bars =
+        Backfill.fetch(
+            Backfill.windows(LocalDate.of(2010, 1, 1), LocalDate.of(2024, 12, 31), 100),
+            w -> {
+              requests.incrementAndGet();
+              List<Bar> result = Lists.newArrayList();
+              for (LocalDate d = w.getTo(); !d.isBefore(w.getFrom()); d = d.minusDays(1)) {
+                if (!d.isBefore(listed)) {
+                  result.add(ImmutableBar.create(d, 1d, 1d, 1d, 1d, 1d));
+                }
+              }
+              return result;
+            },
+            1);
+
+    Assertions.assertThat(bars.get(0).getBeginTime().toLocalDate()).isEqualTo(listed);
+    Assertions.assertThat(bars.get(bars.size() - 1).getBeginTime().toLocalDate())
+        .isEqualTo(LocalDate.of(2024, 12, 31));
+    for (int i = 1; i < bars.size(); i++) {
+      Assertions.assertThat(bars.get(i).getBeginTime()).isAfter(bars.get(i - 1).getBeginTime());
+    }
+
+    // windows older than the first empty one are not requested
+    Assertions.assertThat(requests.get()).isLessThan(30);
+  }
+
+  @Test
+  public void testFetchStopsAfterFailure() {
+    List<Backfill.Window> windows =
+        Backfill.windows(LocalDate.of(2010, 1, 1), LocalDate.of(2024, 12, 31), 10);
+    AtomicInteger requests = new AtomicInteger();
+
+    Assertions.assertThatThrownBy(
+            () ->
+                Backfill.fetch(
+                    windows,
+                    w -> {
+                      requests.incrementAndGet();
+                      throw new IllegalStateException("rate limited");
+                    },
+                    4))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessage("rate limited");
+
+    // each worker makes at most one request before seeing the failure
+    Assertions.assertThat(requests.get()).isLessThanOrEqualTo(4);
+  }
+}
@@ -0,0 +1,84 @@
+package bq.loader;
+
+import com.google.common.collect.Lists;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BarDecoderTest {
+
+  static class Record {
+    String ticker;
+    LocalDate date;
+    double open;
+    double close;
+    double volume;
+  }
+
+  List<Record> decode(BarDecoder decoder, String json) {
+    List<Record> records = Lists.newArrayList();
+    decoder.decode(
+        json.getBytes(StandardCharsets.UTF_8),
+        (ticker, epochDay, open, high, low, close, volume) -> {
+          Record r = new Record();
+          r.ticker = ticker;
+          r.date = LocalDate.ofEpochDay(epochDay);
+          r.open = open;
+          r.close = close;
+          r.volume = volume;
+          records.add(r);
+        });
+    return records;
+  }
+
+  @Test
+  public void testPolygon() {
+    String json =
+        """
+        {"ticker":"AAPL","queryCount":2,"adjusted":true,
+         "results":[
+           {"v":7.0e7,"vw":185.9,"o":187.15,"c":185.64,"h":188.44,"l":183.885,
+            "t":1704171600000,"n":1},
+           {"T":"MSFT","v":100,"o":1,"c":null,"h":1,"l":1,"t":1704258000000},
+           {"o":1,"c":1}
+         ],
+         "status":"OK","request_id":"x","count":2}
+        """;
+    List<Record> records = decode(BarDecoder.polygon(), json);
+
+    Assertions.assertThat(records).hasSize(2);
+    Assertions.assertThat(records.get(0).date).isEqualTo(LocalDate.of(2024, 1, 2));
+    Assertions.assertThat(records.get(0).open).isEqualTo(187.15);
+    Assertions.assertThat(records.get(0).volume).isEqualTo(7.0e7);
+    Assertions.assertThat(records.get(0).ticker).isNull();
+    Assertions.assertThat(records.get(1).ticker).isEqualTo("MSFT");
+    Assertions.assertThat(records.get(1).close).isNaN();
+  }
+
+  @Test
+  public void testCoinbase() {
+    String json =
+        """
+        {"candles":[
+          {"start":"1704240000","low":"44000.5","high":"45900","open":"45000","close":"44950.25",
+           "volume":"1234.5"},
+          {"start":"1704153600","low":"1","high":"1","open":"1","close":"1","volume":"1"}
+        ]}
+        """;
+    List<Record> records = decode(BarDecoder.coinbase(), json);
+
+    Assertions.assertThat(records).hasSize(2);
+    Assertions.assertThat(records.get(0).date).isEqualTo(LocalDate.of(2024, 1, 3));
+    Assertions.assertThat(records.get(0).close).isEqualTo(44950.25);
+    Assertions.assertThat(records.get(0).volume).isEqualTo(1234.5);
+    Assertions.assertThat(records.get(1).date).isEqualTo(LocalDate.of(2024, 1, 2));
+  }
+
+  @Test
+  public void testEmpty() {
+    Assertions.assertThat(decode(BarDecoder.polygon(), "{\"status\":\"OK\"}")).isEmpty();
+    Assertions.assertThat(decode(BarDecoder.polygon(), "{\"results\":[]}")).isEmpty();
+  }
+}
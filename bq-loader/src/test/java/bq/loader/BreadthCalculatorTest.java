@@ -3,6 +3,7 @@ package bq.loader;
 import bq.duckdb.DuckDb;
 import com.google.common.flogger.FluentLogger;
 import java.time.LocalDate;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 public class BreadthCalculatorTest {
@@ -26,4 +27,51 @@ public class BreadthCalculatorTest {
         .log()
         .query("select * from breadth order by date", "breadth");
   }
+
+  @Test
+  public void testRecalculate() {
+    DuckDb db = DuckDb.createInMemory();
+    BreadthCalculator calc = new BreadthCalculator().db(db).createTable();
+
+    db.template()
+        .execute(
+            """
+            insert into breadth_prices values
+              ('2025-01-02', 'A', 10, 1), ('2025-01-02', 'B', 10, 1), ('2025-01-02', 'C', 5, 1),
+              ('2025-01-03', 'A', 11, 2), ('2025-01-03', 'B', 9, 3), ('2025-01-03', 'D', 1, 1)
+            """);
+    calc.recalculate(LocalDate.of(2025, 1, 1));
+
+    // B is down, D has no prior close
+    Assertions.assertThat(
+            db.template()
+                .queryString(
+                    c ->
+                        c.sql(
+                            "select concat_ws(',', adv_count, dec_count, total_count, total_volume)"
+                                + " from breadth where date='2025-01-03'")))
+        .isEqualTo("1,1,2,5");
+
+    // C skipped a day, so it is not compared
+    db.template()
+        .execute(
+            """
+            insert into breadth_prices values
+              ('2025-01-06', 'A', 11, 2), ('2025-01-06', 'B', 10, 3), ('2025-01-06', 'C', 6, 5),
+              ('2025-01-06', 'D', 2, 7)
+            """);
+    calc.recalculate(LocalDate.of(2025, 1, 3));
+
+    Assertions.assertThat(
+            db.template()
+                .queryString(
+                    c ->
+                        c.sql(
+                            "select concat_ws(',', adv_count, dec_count, total_count, total_volume,"
+                                + " ad, cumulative_ad) from breadth where date='2025-01-06'")))
+        .isEqualTo("2,0,3,12,2,2");
+    Assertions.assertThat(db.template().queryInt(c -> c.sql("select count(*) from breadth")))
+        .isEqualTo(3);
+    db.close();
+  }
 }
@@ -1,5 +1,8 @@
 package bq.loader;
 
+import bq.util.Zones;
+import java.time.LocalDate;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 public class LoadTaskTest extends LoaderTest {
@@ -11,4 +14,20 @@ public class LoadTaskTest extends LoaderTest {
 
     task.execute();
   }
+
+  @Test
+  public void testIsUpToDate() {
+    LoadTask task = new LoadTask(getDb()).symbol("S:MSTR");
+    LocalDate today = task.getLastClosedTradingDay().plusDays(1);
+
+    S3Loader.SymbolObject obj = new S3Loader.SymbolObject();
+    Assertions.assertThat(task.isUpToDate(null)).isFalse();
+    Assertions.assertThat(task.isUpToDate(obj)).isFalse();
+
+    obj.lastModified = today.atTime(1, 0).atZone(Zones.NYC).toInstant();
+    Assertions.assertThat(task.isUpToDate(obj)).isTrue();
+
+    obj.lastModified = today.minusDays(1).atTime(17, 0).atZone(Zones.NYC).toInstant();
+    Assertions.assertThat(task.isUpToDate(obj)).isFalse();
+  }
 }
@@ -0,0 +1,101 @@
+package bq.loader;
+
+import bq.duckdb.DuckDb;
+import bq.util.Symbol;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MultiLoadTaskTest extends LoaderTest {
+
+  @Test
+  public void testProviderName() {
+    Assertions.assertThat(MultiLoadTask.getProviderName(Symbol.parse("S:MSTR")))
+        .isEqualTo("polygon");
+    Assertions.assertThat(MultiLoadTask.getProviderName(Symbol.parse("I:SPX")))
+        .isEqualTo("polygon");
+    Assertions.assertThat(MultiLoadTask.getProviderName(Symbol.parse("X:BTC")))
+        .isEqualTo("coinbase");
+  }
+
+  @Test
+  public void testInvalidConcurrency() {
+    Assertions.assertThatThrownBy(() -> new MultiLoadTask(getDb()).concurrency(0))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> new MultiLoadTask(getDb()).providerConcurrency(0))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testExecuteConcurrently() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    Map<String, AtomicInteger> providerRunning = Maps.newConcurrentMap();
+    Map<String, AtomicInteger> providerMaxRunning = Maps.newConcurrentMap();
+    List<DuckDb> workerDbs = Collections.synchronizedList(Lists.newArrayList());
+
+    MultiLoadTask task =
+        new MultiLoadTask(getDb()) {
+          @Override
+          Result load(DuckDb db, Symbol symbol) {
+            workerDbs.add(db);
+            Assertions.assertThat(db.template().queryInt(c -> c.sql("select 1"))).isEqualTo(1);
+
+            String provider = getProviderName(symbol);
+            AtomicInteger p = providerRunning.computeIfAbsent(provider, k -> new AtomicInteger());
+            AtomicInteger pMax =
+                providerMaxRunning.computeIfAbsent(provider, k -> new AtomicInteger());
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            pMax.accumulateAndGet(p.incrementAndGet(), Math::max);
+            try {
+              Thread.sleep(20);
+            } catch (InterruptedException e) {
+              throw new IllegalStateException(e);
+            } finally {
+              p.decrementAndGet();
+              running.decrementAndGet();
+            }
+            if (symbol.getTicker().equals("FAIL")) {
+              throw new IllegalStateException("load failed");
+            }
+            return new Result(symbol);
+          }
+        }.concurrency(3).providerConcurrency(2);
+
+    List<Symbol> symbols = Lists.newArrayList();
+    for (String s : List.of("AAPL", "MSFT", "GOOG", "FAIL", "NVDA", "AMZN")) {
+      symbols.add(Symbol.parse("S:" + s));
+    }
+    for (String s : List.of("BTC", "ETH", "SOL", "DOGE")) {
+      symbols.add(Symbol.parse("X:" + s));
+    }
+
+    List<MultiLoadTask.Result> results = task.executeConcurrently(symbols);
+
+    // one result per symbol, in order, with the failure mapped to a failed result
+    Assertions.assertThat(results).extracting(MultiLoadTask.Result::getSymbol).isEqualTo(symbols);
+    MultiLoadTask.Result failed = results.get(3);
+    Assertions.assertThat(failed.isSuccess()).isFalse();
+    Assertions.assertThat(failed.getError().get()).hasMessage("load failed");
+    Assertions.assertThat(results.stream().filter(r -> r.isSuccess()).count()).isEqualTo(9);
+
+    Assertions.assertThat(maxRunning.get()).isBetween(1, 3);
+    providerMaxRunning.values().forEach(it -> Assertions.assertThat(it.get()).isBetween(1, 2));
+
+    // every load gets its own in-memory db, which is closed when the load completes
+    Assertions.assertThat(workerDbs).hasSize(symbols.size()).doesNotContain(getDb());
+    Set<DuckDb> distinct = Sets.newIdentityHashSet();
+    distinct.addAll(workerDbs);
+    Assertions.assertThat(distinct).hasSize(symbols.size());
+    for (DuckDb db : workerDbs) {
+      Assertions.assertThat(db.getConnection().isClosed()).isTrue();
+    }
+  }
+}
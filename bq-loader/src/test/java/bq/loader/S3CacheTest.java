@@ -0,0 +1,87 @@
+package bq.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class S3CacheTest {
+
+  File put(S3Cache cache, String key, int size, String etag, long lastUsed) throws IOException {
+    File f = cache.getFile("bucket", key);
+    f.getParentFile().mkdirs();
+    Files.write(f.toPath(), new byte[size]);
+    Files.writeString(S3Cache.etagFile(f).toPath(), etag);
+    f.setLastModified(lastUsed);
+    return f;
+  }
+
+  @Test
+  public void testIsCurrent() throws IOException {
+    S3Cache cache = new S3Cache().dir(Files.createTempDirectory("s3cache").toFile());
+    File f = put(cache, "stocks/1d/AAPL.csv", 100, "\"abc\"", System.currentTimeMillis());
+
+    Assertions.assertThat(cache.isCurrent(f, "\"abc\"", 100)).isTrue();
+    Assertions.assertThat(cache.isCurrent(f, "\"def\"", 100)).isFalse();
+    Assertions.assertThat(cache.isCurrent(f, "\"abc\"", 101)).isFalse();
+
+    cache.invalidate("bucket", "stocks/1d/AAPL.csv");
+    Assertions.assertThat(f).doesNotExist();
+    Assertions.assertThat(cache.isCurrent(f, "\"abc\"", 100)).isFalse();
+  }
+
+  @Test
+  public void testEvict() throws IOException {
+    S3Cache cache = new S3Cache().dir(Files.createTempDirectory("s3cache").toFile()).maxBytes(250);
+    long now = System.currentTimeMillis();
+    File oldest = put(cache, "stocks/1d/A.csv", 100, "a", now - 30000);
+    File middle = put(cache, "stocks/1d/B.csv", 100, "b", now - 20000);
+    File newest = put(cache, "stocks/1d/C.csv", 100, "c", now - 10000);
+
+    cache.evict();
+
+    Assertions.assertThat(oldest).doesNotExist();
+    Assertions.assertThat(S3Cache.etagFile(oldest)).doesNotExist();
+    Assertions.assertThat(middle).exists();
+    Assertions.assertThat(newest).exists();
+  }
+
+  S3Cache stubDownloads(File dir) {
+    return new S3Cache() {
+      @Override
+      void download(String bucket, String key, File f) {
+        try {
+          f.getParentFile().mkdirs();
+          Files.write(f.toPath(), new byte[100]);
+          Files.writeString(etagFile(f).toPath(), "etag");
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }.dir(dir);
+  }
+
+  @Test
+  public void testPinnedFilesAreNotEvicted() throws IOException {
+    S3Cache cache = stubDownloads(Files.createTempDirectory("s3cache").toFile()).maxBytes(0);
+
+    File a = cache.get("bucket", "stocks/1d/A.csv", "etag", 100);
+    Assertions.assertThat(a).exists();
+
+    // evicting for the second download must not delete the file that is still in use
+    File b = cache.get("bucket", "stocks/1d/B.csv", "etag", 100);
+    Assertions.assertThat(a).exists();
+    Assertions.assertThat(b).exists();
+
+    cache.release(a);
+    cache.evict();
+    Assertions.assertThat(a).doesNotExist();
+    Assertions.assertThat(b).exists();
+
+    cache.release(b);
+    cache.evict();
+    Assertions.assertThat(b).doesNotExist();
+  }
+}
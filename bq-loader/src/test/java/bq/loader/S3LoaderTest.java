@@ -3,10 +3,19 @@ package bq.loader;
 import bq.loader.polygon.PolygonDataProvider;
 import bq.util.Symbol;
 import bq.util.ta4j.Bars;
+import bq.util.ta4j.ImmutableBar;
+import bq.util.ta4j.ImmutableBarSeries;
+import com.google.common.collect.Lists;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
 import software.amazon.awssdk.regions.Region;
 
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.ta4j.core.Bar;
 import org.ta4j.core.BarSeries;
 
 public class S3LoaderTest extends LoaderTest {
@@ -20,7 +29,90 @@ public class S3LoaderTest extends LoaderTest {
         .isEqualTo("indicators/1d/BTC.MVRVZ.csv");
   }
 
-  
+  @Test
+  public void testExtractParquetSymbol() {
+    Assertions.assertThat(
+            S3Loader.extractSymbol("parquet/1d/type=stocks/ticker=MSTR/year=2024/data_0.parquet"))
+        .contains(Symbol.parse("S:MSTR"));
+    Assertions.assertThat(
+            S3Loader.extractSymbol("parquet/1d/type=crypto/ticker=BTC/year=2024/data_0.parquet"))
+        .contains(Symbol.parse("X:BTC"));
+    Assertions.assertThat(S3Loader.extractSymbol("parquet/1d/type=foo/year=2024/data_0.parquet"))
+        .isEmpty();
+  }
+
+  @Test
+  public void testIsPartitionFrom() {
+    String key = "parquet/1d/type=stocks/ticker=MSTR/year=2024/data_0.parquet";
+    Assertions.assertThat(S3Loader.isPartitionFrom(key, 2023)).isTrue();
+    Assertions.assertThat(S3Loader.isPartitionFrom(key, 2024)).isTrue();
+    Assertions.assertThat(S3Loader.isPartitionFrom(key, 2025)).isFalse();
+    Assertions.assertThat(S3Loader.isPartitionFrom("year=2024", Integer.MIN_VALUE)).isTrue();
+    Assertions.assertThat(S3Loader.isPartitionFrom("parquet/1d/type=stocks/x.parquet", 0))
+        .isFalse();
+  }
+
+  @Test
+  public void testIsFormat() {
+    String csv = "stocks/1d/MSTR.csv";
+    String parquet = "parquet/1d/type=stocks/ticker=MSTR/year=2024/data_0.parquet";
+    Assertions.assertThat(S3Loader.isFormat(csv, S3Loader.Format.CSV)).isTrue();
+    Assertions.assertThat(S3Loader.isFormat(csv, S3Loader.Format.PARQUET)).isFalse();
+    Assertions.assertThat(S3Loader.isFormat(parquet, S3Loader.Format.CSV)).isFalse();
+    Assertions.assertThat(S3Loader.isFormat(parquet, S3Loader.Format.PARQUET)).isTrue();
+  }
+
+  @Test
+  public void testParquetLocal() throws IOException {
+    File dir = Files.createTempDirectory("s3loader").toFile();
+
+    List<Bar> bars = Lists.newArrayList();
+    LocalDate d = LocalDate.of(2022, 12, 1);
+    for (int i = 0; i < 500; i++) {
+      double v = i;
+      bars.add(ImmutableBar.create(d.plusDays(i), v, v, v, v, v));
+    }
+    BarSeries data = ImmutableBarSeries.of(bars, "X:BTC");
+
+    S3Loader loader =
+        new S3Loader(getDb())
+            .symbol("X:BTC")
+            .format(S3Loader.Format.PARQUET)
+            .rootUrl(dir.getAbsolutePath());
+    Assertions.assertThat(loader.exists()).isFalse();
+    Assertions.assertThat(loader.loadAll().getBarCount()).isEqualTo(0);
+
+    loader.writeS3(data);
+
+    File partition = new File(dir, "parquet/1d/type=crypto/ticker=BTC/year=2023");
+    Assertions.assertThat(partition).isDirectory();
+    Assertions.assertThat(loader.loadAll().getBarCount()).isEqualTo(500);
+
+    BarSeries range = loader.fetch(LocalDate.of(2023, 3, 1), LocalDate.of(2023, 3, 31));
+    Assertions.assertThat(range.getBarCount()).isEqualTo(31);
+    Assertions.assertThat(range.getFirstBar().getBeginTime().toLocalDate())
+        .isEqualTo(LocalDate.of(2023, 3, 1));
+
+    // a stale file left in a partition by an earlier write with more files
+    File year2024 = new File(dir, "parquet/1d/type=crypto/ticker=BTC/year=2024");
+    File stale = new File(year2024, "data_7.parquet");
+    Files.copy(new File(year2024, "data_0.parquet").toPath(), stale.toPath());
+    Assertions.assertThat(loader.loadAll().getBarCount()).isGreaterThan(500);
+
+    // rewriting only the changed years replaces those partitions and leaves earlier ones in place
+    File year2022 = new File(dir, "parquet/1d/type=crypto/ticker=BTC/year=2022/data_0.parquet");
+    long modified2022 = year2022.lastModified();
+    bars.add(ImmutableBar.create(d.plusDays(500), 1d, 1d, 1d, 1d, 1d));
+    loader.writeS3(ImmutableBarSeries.of(bars, "X:BTC"), d.plusDays(500));
+    Assertions.assertThat(stale).doesNotExist();
+    Assertions.assertThat(year2022.lastModified()).isEqualTo(modified2022);
+    Assertions.assertThat(loader.loadAll().getBarCount()).isEqualTo(501);
+
+    // a full rewrite removes years that are no longer in the data
+    loader.writeS3(ImmutableBarSeries.of(bars.subList(0, 100), "X:BTC"));
+    Assertions.assertThat(year2024).doesNotExist();
+    Assertions.assertThat(loader.loadAll().getBarCount()).isEqualTo(100);
+  }
 
   @Test
   public void testRead() {
@@ -0,0 +1,40 @@
+package bq.loader;
+
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ThrottleTest {
+
+  @Test
+  public void testReserve() {
+    Throttle t = Throttle.rpm(120);
+    long interval = TimeUnit.MILLISECONDS.toNanos(500);
+    long now = 1_000_000_000L;
+
+    Assertions.assertThat(t.reserve(now)).isEqualTo(0);
+    Assertions.assertThat(t.reserve(now)).isEqualTo(interval);
+    Assertions.assertThat(t.reserve(now)).isEqualTo(2 * interval);
+
+    // after an idle period the next request goes through immediately
+    Assertions.assertThat(t.reserve(now + 10 * interval)).isEqualTo(0);
+  }
+
+  @Test
+  public void testBurst() {
+    Throttle t = new Throttle(60, 3);
+    long interval = TimeUnit.SECONDS.toNanos(1);
+    long now = 1_000_000_000L;
+
+    Assertions.assertThat(t.reserve(now)).isLessThanOrEqualTo(0);
+    Assertions.assertThat(t.reserve(now)).isLessThanOrEqualTo(0);
+    Assertions.assertThat(t.reserve(now)).isLessThanOrEqualTo(0);
+    Assertions.assertThat(t.reserve(now)).isEqualTo(interval);
+  }
+
+  @Test
+  public void testSharedByProvider() {
+    Assertions.assertThat(Throttle.forProvider("test", 10))
+        .isSameAs(Throttle.forProvider("test", 10));
+  }
+}
@@ -0,0 +1,26 @@
+package bq.loader.polygon;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PolygonDataProviderTest {
+
+  @Test
+  public void testRound2() {
+    Assertions.assertThat(PolygonDataProvider.round2(1.005)).isEqualTo(1.01);
+    Assertions.assertThat(PolygonDataProvider.round2(5986.325)).isEqualTo(5986.33);
+    Assertions.assertThat(PolygonDataProvider.round2(0.29)).isEqualTo(0.29);
+    Assertions.assertThat(PolygonDataProvider.round2(-2.345)).isEqualTo(-2.35);
+    Assertions.assertThat(PolygonDataProvider.round2(123456789.0)).isEqualTo(123456789.0);
+    Assertions.assertThat(PolygonDataProvider.round2(Double.NaN)).isNaN();
+
+    // same as the text -> BigDecimal -> setScale path it replaced
+    for (String s : new String[] {"185.0412", "0.125", "42.4449", "17.995", "3.14159"}) {
+      double expected = new BigDecimal(s).setScale(2, RoundingMode.HALF_UP).doubleValue();
+      Assertions.assertThat(PolygonDataProvider.round2(Double.parseDouble(s)))
+          .isEqualTo(expected);
+    }
+  }
+}
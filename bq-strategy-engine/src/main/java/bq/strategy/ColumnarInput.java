@@ -0,0 +1,151 @@
+package bq.strategy;
+
+import bq.duckdb.DuckDb;
+import bq.util.Json;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The numeric columns of a StrategyEngine input table, loaded into primitive arrays in date order.
+ * NULL values are stored as NaN. Other columns are kept as objects, only so that toJson() renders
+ * the same fields as the row-at-a-time engine.
+ */
+class ColumnarInput {
+
+  static final Set<Integer> NUMERIC_TYPES =
+      Set.of(
+          Types.TINYINT,
+          Types.SMALLINT,
+          Types.INTEGER,
+          Types.BIGINT,
+          Types.FLOAT,
+          Types.REAL,
+          Types.DOUBLE,
+          Types.NUMERIC,
+          Types.DECIMAL);
+
+  int size;
+  long[] rowId;
+  long[] epochDay;
+  Map<String, double[]> columns = Maps.newLinkedHashMap();
+
+  // every column of the table, numeric or not, in table order
+  List<String> columnNames = Lists.newArrayList();
+  Map<String, Object[]> otherColumns = Maps.newHashMap();
+
+  static ColumnarInput load(DuckDb db, String table) {
+    int count = db.table(table).rowCount();
+    return db.template()
+        .queryResult(
+            c ->
+                c.sql(
+                        "select rowid as bq_row_id, datediff('day', DATE '1970-01-01', date::DATE)"
+                            + " as bq_epoch_day, * from ##table## order by date asc")
+                    .bind("table", table),
+            rs -> {
+              return load(rs.getResultSet(), count);
+            });
+  }
+
+  static ColumnarInput load(ResultSet rs, int count) throws SQLException {
+    ColumnarInput input = new ColumnarInput();
+    input.rowId = new long[count];
+    input.epochDay = new long[count];
+
+    ResultSetMetaData md = rs.getMetaData();
+    int columnCount = md.getColumnCount();
+    double[][] arrays = new double[columnCount + 1][];
+    Object[][] objects = new Object[columnCount + 1][];
+    for (int i = 3; i <= columnCount; i++) {
+      String name = md.getColumnName(i).toLowerCase();
+      input.columnNames.add(name);
+      if (NUMERIC_TYPES.contains(md.getColumnType(i))) {
+        arrays[i] = new double[count];
+        input.columns.put(name, arrays[i]);
+      } else {
+        objects[i] = new Object[count];
+        input.otherColumns.put(name, objects[i]);
+      }
+    }
+
+    int row = 0;
+    while (rs.next()) {
+      Preconditions.checkState(row < count, "table changed while loading");
+      input.rowId[row] = rs.getLong(1);
+      input.epochDay[row] = rs.getLong(2);
+      for (int i = 3; i <= columnCount; i++) {
+        double[] arr = arrays[i];
+        if (arr != null) {
+          double d = rs.getDouble(i);
+          arr[row] = rs.wasNull() ? Double.NaN : d;
+        } else if (md.getColumnType(i) == Types.BOOLEAN) {
+          boolean b = rs.getBoolean(i);
+          objects[i][row] = rs.wasNull() ? null : b;
+        } else {
+          // rendered as text, as the row mapper used by execute() does
+          objects[i][row] = rs.getString(i);
+        }
+      }
+      row++;
+    }
+    input.size = row;
+    return input;
+  }
+
+  int size() {
+    return size;
+  }
+
+  LocalDate getDate(int index) {
+    return LocalDate.ofEpochDay(epochDay[index]);
+  }
+
+  Optional<double[]> getColumn(String name) {
+    return Optional.ofNullable(columns.get(name.toLowerCase()));
+  }
+
+  Optional<Double> getDouble(String name, int index) {
+    double[] arr = columns.get(name.toLowerCase());
+    if (arr == null || Double.isNaN(arr[index])) {
+      return Optional.empty();
+    }
+    return Optional.of(arr[index]);
+  }
+
+  /** Renders a single row with the same fields as the JSON used by StrategyEngine.execute(). */
+  ObjectNode toJson(int index) {
+    ObjectNode n = Json.createObjectNode();
+    n.put("rowid", rowId[index]);
+    for (String name : columnNames) {
+      double[] arr = columns.get(name);
+      if (arr != null) {
+        if (Double.isNaN(arr[index])) {
+          n.putNull(name);
+        } else {
+          n.put(name, arr[index]);
+        }
+        continue;
+      }
+      Object v = otherColumns.get(name)[index];
+      if (v == null) {
+        n.putNull(name);
+      } else if (v instanceof Boolean) {
+        n.put(name, (Boolean) v);
+      } else {
+        n.put(name, v.toString());
+      }
+    }
+    return n;
+  }
+}
@@ -0,0 +1,308 @@
+package bq.strategy;
+
+import bq.util.BqException;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.flogger.FluentLogger;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Portfolio holding cash and any number of assets. Each asset occupies a fixed slot, and the
+ * quantities, prices and cost basis of all assets are held in primitive arrays indexed by slot.
+ *
+ * <p>Prices are NaN until the first bar for an asset has been seen. Assets without a bar on the
+ * current date keep their last price and are not traded.
+ */
+public class MultiAssetPortfolio {
+
+  static FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  final String[] symbols;
+  final Map<String, Integer> slots = Maps.newHashMap();
+
+  final double[] qty;
+  final double[] price;
+  final double[] unitCostBasis;
+  final double[] txnQty;
+  final double[] txnPrice;
+
+  // true if the asset has a bar on the current date
+  final boolean[] tradable;
+
+  // current row of each asset's input, or -1
+  final int[] inputIndex;
+  ColumnarInput[] inputs;
+
+  double cash = 0;
+  Double initialValue = null;
+  LocalDate date;
+
+  // rebalance() ignores changes smaller than this fraction of portfolio value
+  double minTradeWeight = 0.01;
+
+  MultiAssetPortfolio(List<String> symbols) {
+    Preconditions.checkArgument(symbols != null && !symbols.isEmpty(), "symbols cannot be empty");
+    this.symbols = symbols.toArray(new String[0]);
+    for (int i = 0; i < this.symbols.length; i++) {
+      Preconditions.checkArgument(
+          slots.put(this.symbols[i], i) == null, "duplicate symbol: %s", this.symbols[i]);
+    }
+    int n = this.symbols.length;
+    qty = new double[n];
+    price = new double[n];
+    Arrays.fill(price, Double.NaN);
+    unitCostBasis = new double[n];
+    txnQty = new double[n];
+    txnPrice = new double[n];
+    tradable = new boolean[n];
+    inputIndex = new int[n];
+    Arrays.fill(inputIndex, -1);
+  }
+
+  public static MultiAssetPortfolio create(List<String> symbols) {
+    return new MultiAssetPortfolio(symbols);
+  }
+
+  public MultiAssetPortfolio cash(double d) {
+    this.cash = d;
+    return this;
+  }
+
+  public MultiAssetPortfolio minTradeWeight(double d) {
+    Preconditions.checkArgument(d >= 0 && d < 1, "minTradeWeight must be in [0,1)");
+    this.minTradeWeight = d;
+    return this;
+  }
+
+  public int getAssetCount() {
+    return symbols.length;
+  }
+
+  public String getSymbol(int slot) {
+    return symbols[slot];
+  }
+
+  public int getSlot(String symbol) {
+    Integer slot = slots.get(symbol);
+    if (slot == null) {
+      throw new BqException("unknown symbol: " + symbol);
+    }
+    return slot;
+  }
+
+  public LocalDate getDate() {
+    return date;
+  }
+
+  public double getCash() {
+    return cash;
+  }
+
+  public double getQty(int slot) {
+    return qty[slot];
+  }
+
+  public double getPrice(int slot) {
+    return price[slot];
+  }
+
+  public double getCostBasis(int slot) {
+    return unitCostBasis[slot];
+  }
+
+  public boolean isTradable(int slot) {
+    return tradable[slot];
+  }
+
+  public double getAssetValue(int slot) {
+    double p = price[slot];
+    if (qty[slot] == 0 || Double.isNaN(p)) {
+      return 0;
+    }
+    return qty[slot] * p;
+  }
+
+  public double getPortfolioValue() {
+    double v = cash;
+    for (int i = 0; i < symbols.length; i++) {
+      v += getAssetValue(i);
+    }
+    return v;
+  }
+
+  public double getPortfolioInitialValue() {
+    return initialValue;
+  }
+
+  /** Current weight of each asset as a fraction of portfolio value. */
+  public double[] getWeights() {
+    double[] w = new double[symbols.length];
+    double v = getPortfolioValue();
+    if (v <= 0) {
+      return w;
+    }
+    for (int i = 0; i < w.length; i++) {
+      w[i] = getAssetValue(i) / v;
+    }
+    return w;
+  }
+
+  /**
+   * Value of a numeric input column for the asset on the current date. Empty if the asset has no
+   * bar on the current date, or the value is NULL.
+   */
+  public Optional<Double> getDouble(int slot, String column) {
+    if (inputs == null || inputIndex[slot] < 0) {
+      return Optional.empty();
+    }
+    return inputs[slot].getDouble(column, inputIndex[slot]);
+  }
+
+  public Optional<Double> getDouble(String symbol, String column) {
+    return getDouble(getSlot(symbol), column);
+  }
+
+  boolean fractionalSharesAllowed(int slot) {
+    return symbols[slot].startsWith("X:");
+  }
+
+  public void buy(int slot, double requestedQty) {
+    Preconditions.checkArgument(requestedQty >= 0, "qty cannot be negative");
+    Preconditions.checkState(tradable[slot], "%s is not tradable on %s", symbols[slot], date);
+    double q = fractionalSharesAllowed(slot) ? requestedQty : Math.floor(requestedQty);
+    double cashValue = q * price[slot];
+    if (cashValue - cash > .01) {
+      throw new BqException(
+          String.format("insufficient buying power (%s > %s)", cashValue, cash));
+    }
+    double newQty = qty[slot] + q;
+    if (newQty > 0) {
+      unitCostBasis[slot] = ((qty[slot] * unitCostBasis[slot]) + cashValue) / newQty;
+    }
+    qty[slot] = newQty;
+    cash -= cashValue;
+    txnQty[slot] += q;
+    txnPrice[slot] = price[slot];
+  }
+
+  public void sell(int slot, double requestedQty) {
+    Preconditions.checkArgument(requestedQty >= 0, "qty cannot be negative");
+    Preconditions.checkState(tradable[slot], "%s is not tradable on %s", symbols[slot], date);
+    double q = fractionalSharesAllowed(slot) ? requestedQty : Math.floor(requestedQty);
+    if (q > qty[slot]) {
+      throw new BqException("requested amount " + requestedQty + " exceeds portfolio");
+    }
+    qty[slot] -= q;
+    cash += q * price[slot];
+    txnQty[slot] -= q;
+    txnPrice[slot] = price[slot];
+  }
+
+  /**
+   * Moves the portfolio towards the target weights (fractions of portfolio value, summing to at
+   * most 1). All trades are computed from a single valuation. Sells are applied before buys so that
+   * their proceeds are available, and buys are scaled down if cash would otherwise go negative.
+   * Assets that are not tradable on the current date are left unchanged.
+   */
+  public void rebalance(double[] targetWeights) {
+    Preconditions.checkNotNull(targetWeights, "targetWeights");
+    Preconditions.checkArgument(
+        targetWeights.length == symbols.length,
+        "expected %s weights but got %s",
+        symbols.length,
+        targetWeights.length);
+    double total = 0;
+    for (double w : targetWeights) {
+      Preconditions.checkArgument(w >= 0, "weights cannot be negative");
+      total += w;
+    }
+    Preconditions.checkArgument(total <= 1.0 + 1e-9, "weights must sum to <= 1 (%s)", total);
+
+    double value = getPortfolioValue();
+    if (value <= 0) {
+      return;
+    }
+    int n = symbols.length;
+    double[] delta = new double[n];
+    double buyCost = 0;
+    double sellProceeds = 0;
+    for (int i = 0; i < n; i++) {
+      double p = price[i];
+      if (!tradable[i] || !(p > 0)) {
+        continue;
+      }
+      double currentValue = getAssetValue(i);
+      if (Math.abs(targetWeights[i] * value - currentValue) < minTradeWeight * value) {
+        continue;
+      }
+      double targetQty = targetWeights[i] * value / p;
+      if (!fractionalSharesAllowed(i)) {
+        targetQty = Math.floor(targetQty);
+      }
+      delta[i] = targetQty - qty[i];
+      if (delta[i] > 0) {
+        buyCost += delta[i] * p;
+      } else {
+        sellProceeds -= delta[i] * p;
+      }
+    }
+
+    double available = cash + sellProceeds;
+    double scale = buyCost > available && buyCost > 0 ? Math.max(available, 0) / buyCost : 1.0;
+
+    for (int i = 0; i < n; i++) {
+      if (delta[i] < 0) {
+        sell(i, -delta[i]);
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      if (delta[i] > 0) {
+        double q = delta[i] * scale;
+        if (!fractionalSharesAllowed(i)) {
+          q = Math.floor(q);
+        }
+        if (q > 0) {
+          buy(i, Math.min(q, cash / price[i]));
+        }
+      }
+    }
+  }
+
+  /** Advances to the next date. */
+  void next(LocalDate date) {
+    this.date = date;
+    Arrays.fill(txnQty, 0);
+    Arrays.fill(txnPrice, 0);
+    Arrays.fill(tradable, false);
+    Arrays.fill(inputIndex, -1);
+  }
+
+  /** Records the bar for an asset on the current date. */
+  void price(int slot, double close, int index) {
+    if (!Double.isNaN(close)) {
+      price[slot] = close;
+      tradable[slot] = true;
+    }
+    inputIndex[slot] = index;
+  }
+
+  void recordInitialValue() {
+    if (initialValue == null) {
+      initialValue = getPortfolioValue();
+    }
+  }
+
+  public String toString() {
+    return MoreObjects.toStringHelper("MultiAssetPortfolio")
+        .add("date", date)
+        .add("value", getPortfolioValue())
+        .add("cash", cash)
+        .add("assets", symbols.length)
+        .toString();
+  }
+}
@@ -0,0 +1,5 @@
+package bq.strategy;
+
+public interface MultiAssetStrategy {
+  public void evaluate(MultiAssetPortfolio portfolio);
+}
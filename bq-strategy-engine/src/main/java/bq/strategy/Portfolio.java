@@ -21,7 +21,7 @@ import org.ta4j.core.Bar;
 
 /**
  * Portfolio is a simple single-asset portfolio which can contain an asset and cash.  It is NOT intended to model
- * a portfolio with multiple assets.  Multiple assets are out of scope.
+ * a portfolio with multiple assets.  See MultiAssetPortfolio for that.
  *
  */
 public class Portfolio {
@@ -49,6 +49,10 @@ public class Portfolio {
 
   JsonNode data;
 
+  // set instead of data when running StrategyEngine.executeColumnar()
+  ColumnarInput input;
+  int inputIndex = -1;
+
   public void createTable(String tableName) {
 
     String sql =
@@ -355,14 +359,23 @@ public class Portfolio {
   }
 
   public JsonNode getData() {
+    if (data == null && input != null) {
+      // only materialized if a strategy asks for it
+      data = input.toJson(inputIndex);
+    }
     return data;
   }
 
   public Optional<Double> getDouble(String name) {
-    if (!data.has(name)) {
+    if (input != null) {
+      return input.getDouble(name, inputIndex);
+    }
+    // NULL is empty, as it is in columnar mode, rather than 0
+    JsonNode n = data.path(name);
+    if (n.isMissingNode() || n.isNull()) {
       return Optional.empty();
     }
-    return Optional.of(data.path(name).asDouble());
+    return Optional.of(n.asDouble());
   }
 
   public Portfolio next(Bar bar, JsonNode n) {
@@ -374,6 +387,23 @@ public class Portfolio {
     this.date = bar.getBeginTime().toLocalDate();
     this.assetPrice = bar.getClosePrice().doubleValue();
     this.data = n;
+    this.input = null;
+    this.inputIndex = -1;
+    if (initialValue == null) {
+      this.initialValue = getPortfolioValue();
+    }
+    return this;
+  }
+
+  Portfolio next(ColumnarInput input, int index, double close) {
+    txnPrice = 0;
+    txnQty = 0;
+    this.rowId = input.rowId[index];
+    this.date = input.getDate(index);
+    this.assetPrice = close;
+    this.data = null;
+    this.input = input;
+    this.inputIndex = index;
     if (initialValue == null) {
       this.initialValue = getPortfolioValue();
     }
@@ -0,0 +1,116 @@
+package bq.strategy;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.util.List;
+import org.duckdb.DuckDBAppender;
+
+/**
+ * Portfolio state captured after each bar of a columnar backtest. Each run gets its own instance,
+ * so runs over the same ColumnarInput can proceed concurrently.
+ */
+class PortfolioHistory {
+
+  static final double[] SCALES = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8};
+
+  static final List<String> OUTPUT_COLUMNS =
+      List.of(
+          "cash",
+          "portfolio_value",
+          "portfolio_initial_value",
+          "asset_symbol",
+          "asset_qty",
+          "asset_price",
+          "asset_cost_basis",
+          "txn_qty",
+          "txn_price");
+
+  ColumnarInput input;
+  int size;
+  double[] cash;
+  double[] portfolioValue;
+  double[] portfolioInitialValue;
+  String[] assetSymbol;
+  double[] assetQty;
+  double[] assetPrice;
+  double[] assetCostBasis;
+  double[] txnQty;
+  double[] txnPrice;
+
+  PortfolioHistory(ColumnarInput input) {
+    this.input = input;
+    this.size = input.size();
+    cash = new double[size];
+    portfolioValue = new double[size];
+    portfolioInitialValue = new double[size];
+    assetSymbol = new String[size];
+    assetQty = new double[size];
+    assetPrice = new double[size];
+    assetCostBasis = new double[size];
+    txnQty = new double[size];
+    txnPrice = new double[size];
+  }
+
+  /**
+   * Runs the strategy over every row of the input. The input is only read, never modified.
+   */
+  static PortfolioHistory run(ColumnarInput input, Portfolio portfolio, TradingStrategy strategy) {
+    PortfolioHistory history = new PortfolioHistory(input);
+    double[] close = input.getColumn("close").orElse(new double[history.size]);
+    for (int i = 0; i < history.size; i++) {
+      // mirror StrategyEngine.execute(), where a NULL close is read as 0
+      portfolio.next(input, i, Double.isNaN(close[i]) ? 0 : close[i]);
+      if (i > 0) {
+        strategy.evaluate(portfolio);
+      }
+      history.record(i, portfolio);
+    }
+    return history;
+  }
+
+  void record(int i, Portfolio portfolio) {
+    cash[i] = round(portfolio.getCash(), 2);
+    portfolioValue[i] = round(portfolio.getPortfolioValue(), 2);
+    portfolioInitialValue[i] = round(portfolio.getPortfolioInitialValue(), 2);
+    assetSymbol[i] = portfolio.getAssetSymbol();
+    assetQty[i] = round(portfolio.getAssetQty(), 8);
+    assetPrice[i] = portfolio.getAssetPrice();
+    assetCostBasis[i] = portfolio.getAssetCostBasis();
+    txnQty[i] = portfolio.txnQty;
+    txnPrice[i] = portfolio.txnPrice;
+  }
+
+  /** Appends OUTPUT_COLUMNS for row i, in order, to a row that has already been started. */
+  void appendOutputColumns(DuckDBAppender appender, int i) throws SQLException {
+    appender.append(cash[i]);
+    appender.append(portfolioValue[i]);
+    appender.append(portfolioInitialValue[i]);
+    if (assetSymbol[i] == null) {
+      appender.appendNull();
+    } else {
+      appender.append(assetSymbol[i]);
+    }
+    appender.append(assetQty[i]);
+    appender.append(assetPrice[i]);
+    appender.append(assetCostBasis[i]);
+    appender.append(txnQty[i]);
+    appender.append(txnPrice[i]);
+  }
+
+  /**
+   * Same HALF_UP rounding of the exact binary value as StrategyEngine.toRecord(). Values that are
+   * already the nearest double to a number with at most scale decimals are returned without
+   * allocating a BigDecimal.
+   */
+  static double round(double d, int scale) {
+    if (!Double.isFinite(d)) {
+      return d;
+    }
+    double f = SCALES[scale];
+    if (Math.rint(d * f) / f == d) {
+      return d;
+    }
+    return new BigDecimal(d).setScale(scale, RoundingMode.HALF_UP).doubleValue();
+  }
+}
@@ -3,15 +3,18 @@ package bq.strategy;
 import bq.duckdb.DuckDb;
 import bq.ducktape.BarSeriesTable;
 import bq.ducktape.DuckTape;
-import bq.sql.SqlTemplate;
 import bq.sql.mapper.Mappers;
 import bq.util.Dates;
 import bq.util.ta4j.ImmutableBar;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.flogger.FluentLogger;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.ta4j.core.Bar;
 
@@ -24,6 +27,12 @@ public class StrategyEngine {
   Portfolio portfolio;
   TradingStrategy strategy;
 
+  // multi-asset mode
+  Map<String, BarSeriesTable> inputTables;
+  MultiAssetPortfolio multiAssetPortfolio;
+  MultiAssetStrategy multiAssetStrategy;
+  String resultTable = "portfolio_results";
+
   public static StrategyEngine create(DuckTape tape) {
 
     StrategyEngine engine = new StrategyEngine();
@@ -55,57 +64,49 @@ public class StrategyEngine {
     addColumn("txn_price double");
   }
 
+  static final String WRITE_RECORD_SQL =
+      """
+      update ##table## set
+      cash={{cash}},
+      portfolio_value={{portfolio_value}},
+      portfolio_initial_value={{portfolio_initial_value}},
+      asset_symbol = {{asset_symbol}},
+      asset_qty = {{asset_qty}},
+      asset_price = {{asset_price}},
+      asset_cost_basis = {{asset_cost_basis}},
+      txn_qty = {{txn_qty}},
+      txn_price = {{txn_price}}
+
+      where date = {{date}}
+      """;
+
+  /** Captures the current portfolio state as bind values for WRITE_RECORD_SQL. */
+  Object[] toRecord() {
+    return new Object[] {
+      new BigDecimal(portfolio.getCash()).setScale(2, RoundingMode.HALF_UP).doubleValue(),
+      new BigDecimal(portfolio.getPortfolioValue()).setScale(2, RoundingMode.HALF_UP).doubleValue(),
+      new BigDecimal(portfolio.getPortfolioInitialValue())
+          .setScale(2, RoundingMode.HALF_UP)
+          .doubleValue(),
+      portfolio.getAssetSymbol(),
+      new BigDecimal(portfolio.getAssetQty()).setScale(8, RoundingMode.HALF_UP).doubleValue(),
+      portfolio.getAssetPrice(),
+      portfolio.getAssetCostBasis(),
+      portfolio.txnQty,
+      portfolio.txnPrice,
+      portfolio.getDate()
+    };
+  }
+
   public void writeRecord() {
-    String sql =
-        """
-        update {{table}} set
-        cash={{cash}},
-        portfolio_value={{portfolio_value}},
-        portfolio_initial_value={{portfolio_initial_value}},
-        asset_symbol = {{asset_symbol}},
-        asset_qty = {{asset_qty}},
-        asset_price = {{asset_price}},
-        asset_cost_basis = {{asset_cost_basis}},
-        txn_qty = {{txn_qty}},
-        txn_price = {{txn_price}}
-
-        where date = {{date}}
-        """;
-
-    sql = sql.replace("{{table}}", inputTable.getTableName());
-
-    SqlTemplate t = inputTable.getDb().template();
-
-    String fsql = sql;
-
-    t.update(
-        c -> {
-          c.sql(fsql);
-          c.bind("date", portfolio.getDate());
-          c.bind(
-              "cash",
-              new BigDecimal(portfolio.getCash()).setScale(2, RoundingMode.HALF_UP).doubleValue());
-          c.bind(
-              "portfolio_value",
-              new BigDecimal(portfolio.getPortfolioValue())
-                  .setScale(2, RoundingMode.HALF_UP)
-                  .doubleValue());
-          c.bind(
-              "portfolio_initial_value",
-              new BigDecimal(portfolio.getPortfolioInitialValue())
-                  .setScale(2, RoundingMode.HALF_UP)
-                  .doubleValue());
-          c.bind("asset_symbol", portfolio.getAssetSymbol());
-          c.bind(
-              "asset_qty",
-              new BigDecimal(portfolio.getAssetQty())
-                  .setScale(8, RoundingMode.HALF_UP)
-                  .doubleValue());
-          c.bind("asset_price", portfolio.getAssetPrice());
-          c.bind("asset_cost_basis", portfolio.getAssetCostBasis());
-          c.bind("txn_qty", portfolio.txnQty);
-          c.bind("txn_price", portfolio.txnPrice);
-        });
+    writeRecords(List.<Object[]>of(toRecord()));
+  }
+
+  void writeRecords(List<Object[]> records) {
+    inputTable
+        .getDb()
+        .template()
+        .batchUpdate(WRITE_RECORD_SQL, Map.of("table", inputTable.getTableName()), records);
   }
 
   public StrategyEngine inputTable(BarSeriesTable inputTable) {
@@ -128,6 +129,7 @@ public class StrategyEngine {
     Preconditions.checkState(inputTable != null, "inputTable must be set");
     Preconditions.checkState(this.strategy != null, "strategy must be set");
     AtomicInteger count = new AtomicInteger();
+    List<Object[]> records = Lists.newArrayList();
 
     alterInputTable();
 
@@ -158,8 +160,179 @@ public class StrategyEngine {
               if (count.get() > 0) {
                 strategy.evaluate(portfolio);
               }
-              writeRecord();
+              records.add(toRecord());
               count.incrementAndGet();
             });
+
+    // all rows are written in a single batch rather than one update per bar
+    writeRecords(records);
+  }
+
+  /**
+   * Runs the same loop as execute(), but over primitive column arrays. The input table is read with
+   * one query, portfolio state is collected into preallocated arrays and the output columns are
+   * written with a single bulk update at the end.
+   *
+   * <p>Strategies should use Portfolio.getDouble(). Portfolio.getData() still works, but builds a
+   * JSON object for the current row on demand.
+   */
+  public void executeColumnar() {
+    Preconditions.checkState(inputTable != null, "inputTable must be set");
+    Preconditions.checkState(this.strategy != null, "strategy must be set");
+
+    alterInputTable();
+
+    ColumnarInput input = ColumnarInput.load(getDb(), inputTable.getTableName());
+    PortfolioHistory history = PortfolioHistory.run(input, portfolio, strategy);
+
+    inputTable
+        .getTable()
+        .updateByRowId(
+            PortfolioHistory.OUTPUT_COLUMNS,
+            appender -> {
+              for (int i = 0; i < history.size; i++) {
+                appender.beginRow();
+                appender.append(input.rowId[i]);
+                history.appendOutputColumns(appender, i);
+                appender.endRow();
+              }
+            });
+  }
+
+  /**
+   * Input tables for executeMultiAsset(), keyed by the portfolio symbol that each one prices.
+   */
+  public StrategyEngine inputTables(Map<String, BarSeriesTable> inputTables) {
+    this.inputTables = Map.copyOf(inputTables);
+    return this;
+  }
+
+  public StrategyEngine multiAssetPortfolio(MultiAssetPortfolio p) {
+    this.multiAssetPortfolio = p;
+    return this;
+  }
+
+  public StrategyEngine multiAssetStrategy(MultiAssetStrategy strategy) {
+    this.multiAssetStrategy = strategy;
+    return this;
+  }
+
+  /** Table written by executeMultiAsset(). It is replaced if it exists. */
+  public StrategyEngine resultTable(String resultTable) {
+    this.resultTable = resultTable;
+    return this;
+  }
+
+  /**
+   * Backtests a MultiAssetStrategy over several input tables. The tables are aligned by date: the
+   * strategy is evaluated once for every date on which at least one asset has a bar. The input
+   * tables are not modified. Results are written to resultTable with one row per (date, symbol).
+   */
+  public void executeMultiAsset() {
+    Preconditions.checkState(inputTables != null, "inputTables must be set");
+    Preconditions.checkState(multiAssetPortfolio != null, "multiAssetPortfolio must be set");
+    Preconditions.checkState(multiAssetStrategy != null, "multiAssetStrategy must be set");
+
+    MultiAssetPortfolio p = multiAssetPortfolio;
+    int n = p.getAssetCount();
+    ColumnarInput[] inputs = new ColumnarInput[n];
+    double[][] closes = new double[n][];
+    for (int i = 0; i < n; i++) {
+      BarSeriesTable table = inputTables.get(p.getSymbol(i));
+      Preconditions.checkState(table != null, "no input table for %s", p.getSymbol(i));
+      inputs[i] = ColumnarInput.load(getDb(), table.getTableName());
+      closes[i] = inputs[i].getColumn("close").orElse(new double[inputs[i].size()]);
+    }
+    p.inputs = inputs;
+
+    long[] dates = unionOfDates(inputs);
+
+    getDb()
+        .template()
+        .execute(c -> c.sql("drop table if exists ##table##").bind("table", resultTable));
+    getDb()
+        .template()
+        .execute(
+            c ->
+                c.sql(
+                        """
+                        create table ##table## (
+                          date date,
+                          symbol varchar(20),
+                          asset_qty double,
+                          asset_price double,
+                          asset_cost_basis double,
+                          txn_qty double,
+                          txn_price double,
+                          cash double,
+                          portfolio_value double
+                        )
+                        """)
+                    .bind("table", resultTable));
+
+    int[] cursor = new int[n];
+    getDb()
+        .table(resultTable)
+        .append(
+            appender -> {
+              for (int d = 0; d < dates.length; d++) {
+                long day = dates[d];
+                p.next(LocalDate.ofEpochDay(day));
+                for (int i = 0; i < n; i++) {
+                  long[] days = inputs[i].epochDay;
+                  while (cursor[i] < inputs[i].size() && days[cursor[i]] < day) {
+                    cursor[i]++;
+                  }
+                  if (cursor[i] < inputs[i].size() && days[cursor[i]] == day) {
+                    p.price(i, closes[i][cursor[i]], cursor[i]);
+                  }
+                }
+                p.recordInitialValue();
+                if (d > 0) {
+                  multiAssetStrategy.evaluate(p);
+                }
+
+                double cash = PortfolioHistory.round(p.getCash(), 2);
+                double value = PortfolioHistory.round(p.getPortfolioValue(), 2);
+                for (int i = 0; i < n; i++) {
+                  if (Double.isNaN(p.getPrice(i))) {
+                    // not listed yet
+                    continue;
+                  }
+                  appender.beginRow();
+                  appender.appendLocalDateTime(p.getDate().atStartOfDay());
+                  appender.append(p.getSymbol(i));
+                  appender.append(p.qty[i]);
+                  appender.append(p.price[i]);
+                  appender.append(p.unitCostBasis[i]);
+                  appender.append(p.txnQty[i]);
+                  appender.append(p.txnPrice[i]);
+                  appender.append(cash);
+                  appender.append(value);
+                  appender.endRow();
+                }
+              }
+            });
+  }
+
+  static long[] unionOfDates(ColumnarInput[] inputs) {
+    int total = 0;
+    for (ColumnarInput input : inputs) {
+      total += input.size();
+    }
+    long[] all = new long[total];
+    int pos = 0;
+    for (ColumnarInput input : inputs) {
+      System.arraycopy(input.epochDay, 0, all, pos, input.size());
+      pos += input.size();
+    }
+    Arrays.sort(all);
+    int unique = 0;
+    for (int i = 0; i < all.length; i++) {
+      if (unique == 0 || all[i] != all[unique - 1]) {
+        all[unique++] = all[i];
+      }
+    }
+    return Arrays.copyOf(all, unique);
   }
 }
@@ -0,0 +1,279 @@
+package bq.strategy;
+
+import bq.duckdb.DuckDb;
+import bq.ducktape.BarSeriesTable;
+import bq.ducktape.DuckTape;
+import bq.util.BqException;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.flogger.FluentLogger;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs many (Portfolio, TradingStrategy) combinations over one or more input tables. Each input is
+ * loaded once and shared read-only, each run has its own Portfolio and output buffer, and runs
+ * execute concurrently. Unlike StrategyEngine, the input tables are not modified. Results are
+ * written to a single long-format table with one row per (run_id, date).
+ *
+ * <pre>
+ * StrategySweep.create(tape)
+ *     .inputTable(btc)
+ *     .addRun("alloc_50", portfolio1, strategy1)
+ *     .addRun("alloc_90", portfolio2, strategy2)
+ *     .resultTable("sweep")
+ *     .execute();
+ * </pre>
+ *
+ * To run the same parameter grid over several symbols, add each input table and register the runs
+ * with factories. Every factory run is created once per input table with the id {@code
+ * <table>/<runId>}:
+ *
+ * <pre>
+ * StrategySweep.create(tape)
+ *     .addInputTable(btc)
+ *     .addInputTable(eth)
+ *     .addRunForEachInput("alloc_50", t -> portfolioFor(t), () -> strategy(50))
+ *     .execute();
+ * </pre>
+ */
+public class StrategySweep {
+
+  static FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  DuckTape tape;
+  List<BarSeriesTable> inputTables = Lists.newArrayList();
+  String resultTable = "sweep_results";
+  int parallelism = Runtime.getRuntime().availableProcessors();
+
+  Map<String, Run> runs = Maps.newLinkedHashMap();
+  Map<String, RunFactory> runFactories = Maps.newLinkedHashMap();
+
+  static class Run {
+    String runId;
+    BarSeriesTable table;
+    ColumnarInput input;
+    Portfolio portfolio;
+    TradingStrategy strategy;
+    PortfolioHistory history;
+  }
+
+  static class RunFactory {
+    Function<BarSeriesTable, Portfolio> portfolio;
+    Supplier<TradingStrategy> strategy;
+  }
+
+  public static StrategySweep create(DuckTape tape) {
+    StrategySweep sweep = new StrategySweep();
+    sweep.tape = tape;
+    return sweep;
+  }
+
+  public DuckDb getDb() {
+    return tape.getDb();
+  }
+
+  /** Sets the only input table, replacing any that were added before. */
+  public StrategySweep inputTable(BarSeriesTable inputTable) {
+    Preconditions.checkNotNull(inputTable, "inputTable");
+    this.inputTables.clear();
+    this.inputTables.add(inputTable);
+    return this;
+  }
+
+  public StrategySweep addInputTable(BarSeriesTable inputTable) {
+    Preconditions.checkNotNull(inputTable, "inputTable");
+    this.inputTables.add(inputTable);
+    return this;
+  }
+
+  public StrategySweep resultTable(String resultTable) {
+    this.resultTable = resultTable;
+    return this;
+  }
+
+  public StrategySweep parallelism(int parallelism) {
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be > 0");
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Adds a run over the single input table. Portfolio and TradingStrategy instances hold per-run
+   * state, so they must not be shared between runs.
+   */
+  public StrategySweep addRun(String runId, Portfolio portfolio, TradingStrategy strategy) {
+    Preconditions.checkNotNull(runId, "runId");
+    Preconditions.checkNotNull(portfolio, "portfolio");
+    Preconditions.checkNotNull(strategy, "strategy");
+    Preconditions.checkArgument(!runs.containsKey(runId), "duplicate runId: %s", runId);
+    Run run = new Run();
+    run.runId = runId;
+    run.portfolio = portfolio;
+    run.strategy = strategy;
+    runs.put(runId, run);
+    return this;
+  }
+
+  /**
+   * Adds a run that is executed once for every input table. The factories are called once per
+   * table, so each run gets its own Portfolio and TradingStrategy. The portfolio factory is given
+   * the input table so that it can set the asset symbol.
+   */
+  public StrategySweep addRunForEachInput(
+      String runId,
+      Function<BarSeriesTable, Portfolio> portfolio,
+      Supplier<TradingStrategy> strategy) {
+    Preconditions.checkNotNull(runId, "runId");
+    Preconditions.checkNotNull(portfolio, "portfolio");
+    Preconditions.checkNotNull(strategy, "strategy");
+    Preconditions.checkArgument(!runFactories.containsKey(runId), "duplicate runId: %s", runId);
+    RunFactory factory = new RunFactory();
+    factory.portfolio = portfolio;
+    factory.strategy = strategy;
+    runFactories.put(runId, factory);
+    return this;
+  }
+
+  /**
+   * Executes all runs and writes the results table, replacing it if it exists.
+   *
+   * @return the final portfolio of each run, keyed by run id
+   */
+  public Map<String, Portfolio> execute() {
+    Preconditions.checkState(!inputTables.isEmpty(), "inputTable must be set");
+    Preconditions.checkState(
+        runs.isEmpty() || inputTables.size() == 1,
+        "addRun() requires a single input table; use addRunForEachInput()");
+    expandRunFactories();
+    checkUnshared();
+
+    Map<String, ColumnarInput> inputs = Maps.newLinkedHashMap();
+    for (BarSeriesTable table : inputTables) {
+      inputs.computeIfAbsent(table.getTableName(), name -> ColumnarInput.load(getDb(), name));
+    }
+    for (Run run : runs.values()) {
+      run.input = inputs.get(run.table.getTableName());
+    }
+
+    long t0 = System.currentTimeMillis();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      List<Future<?>> futures = Lists.newArrayList();
+      for (Run run : runs.values()) {
+        futures.add(
+            pool.submit(
+                () -> {
+                  run.history = PortfolioHistory.run(run.input, run.portfolio, run.strategy);
+                }));
+      }
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BqException(e);
+    } catch (ExecutionException e) {
+      throw new BqException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+    logger.atInfo().log(
+        "executed %s runs over %s input tables in %sms",
+        runs.size(), inputs.size(), System.currentTimeMillis() - t0);
+
+    writeResults();
+
+    Map<String, Portfolio> result = Maps.newLinkedHashMap();
+    runs.forEach((id, run) -> result.put(id, run.portfolio));
+    return result;
+  }
+
+  private void expandRunFactories() {
+    for (Run run : runs.values()) {
+      if (run.table == null) {
+        run.table = inputTables.get(0);
+      }
+    }
+    runFactories.forEach(
+        (runId, factory) -> {
+          for (BarSeriesTable table : inputTables) {
+            Run run = new Run();
+            run.runId = table.getTableName() + "/" + runId;
+            run.table = table;
+            run.portfolio = factory.portfolio.apply(table);
+            run.strategy = factory.strategy.get();
+            Preconditions.checkState(
+                !runs.containsKey(run.runId), "duplicate runId: %s", run.runId);
+            runs.put(run.runId, run);
+          }
+        });
+    runFactories.clear();
+  }
+
+  private void checkUnshared() {
+    Set<Object> seen = Sets.newIdentityHashSet();
+    for (Run run : runs.values()) {
+      Preconditions.checkArgument(
+          seen.add(run.portfolio), "portfolio shared between runs (%s)", run.runId);
+      Preconditions.checkArgument(
+          seen.add(run.strategy), "strategy shared between runs (%s)", run.runId);
+    }
+  }
+
+  void createResultTable() {
+    getDb()
+        .template()
+        .execute(c -> c.sql("drop table if exists ##table##").bind("table", resultTable));
+    getDb()
+        .template()
+        .execute(
+            c ->
+                c.sql(
+                        """
+                        create table ##table## (
+                          run_id varchar,
+                          input_table varchar,
+                          date date,
+                          cash double,
+                          portfolio_value double,
+                          portfolio_initial_value double,
+                          asset_symbol varchar(20),
+                          asset_qty double,
+                          asset_price double,
+                          asset_cost_basis double,
+                          txn_qty double,
+                          txn_price double
+                        )
+                        """)
+                    .bind("table", resultTable));
+  }
+
+  void writeResults() {
+    createResultTable();
+    getDb()
+        .table(resultTable)
+        .append(
+            appender -> {
+              for (Run run : runs.values()) {
+                PortfolioHistory history = run.history;
+                for (int i = 0; i < history.size; i++) {
+                  appender.beginRow();
+                  appender.append(run.runId);
+                  appender.append(run.table.getTableName());
+                  appender.appendLocalDateTime(run.input.getDate(i).atStartOfDay());
+                  history.appendOutputColumns(appender, i);
+                  appender.endRow();
+                }
+              }
+            });
+  }
+}
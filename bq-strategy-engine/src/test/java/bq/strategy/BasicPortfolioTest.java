@@ -1,9 +1,16 @@
 package bq.strategy;
 
+import static org.assertj.core.data.Offset.offset;
+
 import bq.ducktape.BarSeriesTable;
 import bq.ducktape.chart.Chart;
+import bq.sql.mapper.Mappers;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
 import java.io.File;
 import java.time.DayOfWeek;
+import java.util.List;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 public class BasicPortfolioTest extends BaseTest {
@@ -63,4 +70,90 @@ public class BasicPortfolioTest extends BaseTest {
             })
         .view();
   }
+
+  TradingStrategy quantileStrategy() {
+    return new TradingStrategy() {
+
+      int allocation = 0;
+
+      @Override
+      public void evaluate(Portfolio position) {
+        double q = position.getDouble("q").orElse(50d);
+        if (q > 80) {
+          allocation = 50;
+        } else if (q < 20) {
+          allocation = 100;
+        }
+        if (position.date.getDayOfWeek() == DayOfWeek.MONDAY) {
+          position.rebalance(allocation);
+        }
+      }
+    };
+  }
+
+  @Test
+  public void testColumnar() {
+
+    BarSeriesTable rowTable = tape.importTable("btc_row", new File("./btc.csv"));
+    rowTable.addIndicator("btc_power_law_quantile() as q");
+    nullWarmUp("btc_row");
+    Portfolio p1 = new Portfolio().cash(10000).assetSymbol("X:BTC");
+    StrategyEngine.create(tape)
+        .portfolio(p1)
+        .inputTable(rowTable)
+        .strategy(quantileStrategy())
+        .execute();
+
+    BarSeriesTable columnarTable = tape.importTable("btc_columnar", new File("./btc.csv"));
+    columnarTable.addIndicator("btc_power_law_quantile() as q");
+    nullWarmUp("btc_columnar");
+    Portfolio p2 = new Portfolio().cash(10000).assetSymbol("X:BTC");
+    StrategyEngine.create(tape)
+        .portfolio(p2)
+        .inputTable(columnarTable)
+        .strategy(quantileStrategy())
+        .executeColumnar();
+
+    Assertions.assertThat(p2.getPortfolioValue()).isCloseTo(p1.getPortfolioValue(), offset(0.01));
+
+    int mismatches =
+        db.template()
+            .queryInt(
+                c ->
+                    c.sql(
+                        "select count(*) from btc_row r join btc_columnar c on r.date=c.date"
+                            + " where r.cash<>c.cash or r.portfolio_value<>c.portfolio_value"
+                            + " or r.portfolio_initial_value<>c.portfolio_initial_value"
+                            + " or r.asset_qty<>c.asset_qty"
+                            + " or r.txn_qty<>c.txn_qty or r.asset_symbol<>c.asset_symbol"));
+    Assertions.assertThat(mismatches).isEqualTo(0);
+
+    // strategies see the same fields, including VARCHAR columns, in both modes
+    ColumnarInput input = ColumnarInput.load(db, "btc_columnar");
+    List<ObjectNode> rows =
+        db.template()
+            .query(
+                c -> c.sql("select rowid,* from btc_columnar order by date asc"),
+                Mappers.jsonObjectMapper())
+            .toList();
+    for (int i : new int[] {0, 100, rows.size() - 1}) {
+      ObjectNode row = rows.get(i);
+      ObjectNode columnar = input.toJson(i);
+      Assertions.assertThat(Lists.newArrayList(columnar.fieldNames()))
+          .containsExactlyElementsOf(Lists.newArrayList(row.fieldNames()));
+      Assertions.assertThat(columnar.path("asset_symbol")).isEqualTo(row.path("asset_symbol"));
+      Assertions.assertThat(columnar.path("date")).isEqualTo(row.path("date"));
+      Assertions.assertThat(columnar.path("q").isNull()).isEqualTo(row.path("q").isNull());
+    }
+  }
+
+  // indicator values are NULL until the indicator has warmed up
+  void nullWarmUp(String table) {
+    db.template()
+        .execute(
+            String.format(
+                "update %s set q = null"
+                    + " where date in (select date from %s order by date limit 200)",
+                table, table));
+  }
 }
@@ -0,0 +1,89 @@
+package bq.strategy;
+
+import static org.assertj.core.data.Offset.offset;
+
+import bq.ducktape.BarSeriesTable;
+import java.io.File;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MultiAssetPortfolioTest extends BaseTest {
+
+  @Test
+  public void testRebalance() {
+    MultiAssetPortfolio p =
+        MultiAssetPortfolio.create(List.of("X:BTC", "X:ETH", "AAPL")).cash(10000);
+
+    p.next(LocalDate.of(2025, 1, 2));
+    p.price(0, 100000, 0);
+    p.price(1, 4000, 0);
+    p.price(2, 200, 0);
+    p.recordInitialValue();
+
+    p.rebalance(new double[] {0.5, 0.25, 0.25});
+
+    Assertions.assertThat(p.getQty(0)).isCloseTo(0.05, offset(0.000001));
+    Assertions.assertThat(p.getQty(1)).isCloseTo(0.625, offset(0.000001));
+    // whole shares only
+    Assertions.assertThat(p.getQty(2)).isEqualTo(12);
+    Assertions.assertThat(p.getCash()).isCloseTo(100, offset(0.01));
+    Assertions.assertThat(p.getPortfolioValue()).isCloseTo(10000, offset(0.01));
+
+    // BTC doubles, then rotate out of it entirely
+    p.next(LocalDate.of(2025, 1, 3));
+    p.price(0, 200000, 1);
+    p.price(1, 4000, 1);
+    p.price(2, 200, 1);
+    Assertions.assertThat(p.getPortfolioValue()).isCloseTo(15000, offset(0.01));
+
+    p.rebalance(new double[] {0, 0.5, 0.5});
+    Assertions.assertThat(p.getQty(0)).isEqualTo(0);
+    Assertions.assertThat(p.getQty(1)).isCloseTo(1.875, offset(0.000001));
+    Assertions.assertThat(p.getQty(2)).isEqualTo(37);
+    Assertions.assertThat(p.getCash()).isGreaterThanOrEqualTo(0);
+    Assertions.assertThat(p.getPortfolioValue()).isCloseTo(15000, offset(0.01));
+  }
+
+  @Test
+  public void testNotTradable() {
+    MultiAssetPortfolio p = MultiAssetPortfolio.create(List.of("X:BTC", "X:ETH")).cash(1000);
+    p.next(LocalDate.of(2025, 1, 2));
+    p.price(0, 100, 0);
+
+    p.rebalance(new double[] {0.5, 0.5});
+    Assertions.assertThat(p.getQty(0)).isCloseTo(5, offset(0.000001));
+    Assertions.assertThat(p.getQty(1)).isEqualTo(0);
+    Assertions.assertThat(p.isTradable(1)).isFalse();
+  }
+
+  @Test
+  public void testEngine() {
+    BarSeriesTable btc = tape.importTable("btc", new File("./btc.csv"));
+    db.template()
+        .execute(
+            "create table half as select date, open/2 as open, high/2 as high, low/2 as low,"
+                + " close/2 as close, volume from btc where date >= '2020-01-01'");
+    BarSeriesTable half = tape.getTable("half");
+
+    MultiAssetPortfolio p = MultiAssetPortfolio.create(List.of("X:BTC", "X:HALF")).cash(10000);
+    StrategyEngine.create(tape)
+        .inputTables(Map.of("X:BTC", btc, "X:HALF", half))
+        .multiAssetPortfolio(p)
+        .multiAssetStrategy(
+            portfolio -> {
+              portfolio.rebalance(new double[] {0.5, portfolio.isTradable(1) ? 0.5 : 0});
+            })
+        .resultTable("results")
+        .executeMultiAsset();
+
+    int btcRows = btc.getTable().rowCount();
+    Assertions.assertThat(
+            db.template().queryInt(c -> c.sql("select count(distinct date) from results")))
+        .isEqualTo(btcRows);
+    Assertions.assertThat(p.getQty(0) * p.getPrice(0))
+        .isCloseTo(p.getQty(1) * p.getPrice(1), offset(p.getPortfolioValue() * 0.02));
+  }
+}
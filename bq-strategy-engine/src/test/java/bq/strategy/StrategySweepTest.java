@@ -0,0 +1,142 @@
+package bq.strategy;
+
+import bq.ducktape.BarSeriesTable;
+import java.io.File;
+import java.time.DayOfWeek;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class StrategySweepTest extends BaseTest {
+
+  TradingStrategy fixedAllocation(int allocation) {
+    return new TradingStrategy() {
+      @Override
+      public void evaluate(Portfolio p) {
+        if (p.getDate().getDayOfWeek() == DayOfWeek.MONDAY) {
+          p.rebalance(allocation);
+        }
+      }
+    };
+  }
+
+  @Test
+  public void testSweep() {
+    BarSeriesTable t = tape.importTable("btc", new File("./btc.csv"));
+    int rows = t.getTable().rowCount();
+
+    StrategySweep sweep = StrategySweep.create(tape).inputTable(t).resultTable("sweep");
+    for (int allocation = 0; allocation <= 100; allocation += 10) {
+      sweep.addRun(
+          "alloc_" + allocation,
+          new Portfolio().cash(10000).assetSymbol("X:BTC"),
+          fixedAllocation(allocation));
+    }
+    var result = sweep.execute();
+
+    Assertions.assertThat(result).hasSize(11);
+    Assertions.assertThat(result.get("alloc_0").getPortfolioValue()).isEqualTo(10000d);
+    Assertions.assertThat(db.template().queryInt(c -> c.sql("select count(*) from sweep")))
+        .isEqualTo(rows * 11);
+
+    // the input table is not modified
+    Assertions.assertThat(t.getTable().hasColumn("portfolio_value")).isFalse();
+
+    // a single run must match StrategyEngine
+    Portfolio p = new Portfolio().cash(10000).assetSymbol("X:BTC");
+    StrategyEngine.create(tape)
+        .portfolio(p)
+        .inputTable(t)
+        .strategy(fixedAllocation(50))
+        .executeColumnar();
+    Assertions.assertThat(result.get("alloc_50").getPortfolioValue())
+        .isEqualTo(p.getPortfolioValue());
+  }
+
+  @Test
+  public void testSweepInputTables() {
+    BarSeriesTable btc = tape.importTable("btc", new File("./btc.csv"));
+    BarSeriesTable btc2 = tape.importTable("btc2", new File("./btc.csv"));
+    db.template()
+        .execute(
+            c -> c.sql("delete from btc2 where date < (select min(date) + 100 from btc2)"));
+    btc2.reload();
+    int rows = btc.getTable().rowCount() + btc2.getTable().rowCount();
+
+    StrategySweep sweep =
+        StrategySweep.create(tape).addInputTable(btc).addInputTable(btc2).resultTable("sweep");
+    for (int allocation = 0; allocation <= 100; allocation += 50) {
+      int a = allocation;
+      sweep.addRunForEachInput(
+          "alloc_" + allocation,
+          t -> new Portfolio().cash(10000).assetSymbol("X:BTC"),
+          () -> fixedAllocation(a));
+    }
+    var result = sweep.execute();
+
+    Assertions.assertThat(result)
+        .containsOnlyKeys(
+            "btc/alloc_0",
+            "btc2/alloc_0",
+            "btc/alloc_50",
+            "btc2/alloc_50",
+            "btc/alloc_100",
+            "btc2/alloc_100");
+    Assertions.assertThat(db.template().queryInt(c -> c.sql("select count(*) from sweep")))
+        .isEqualTo(rows * 3);
+    Assertions.assertThat(
+            db.template()
+                .queryInt(
+                    c ->
+                        c.sql(
+                            "select count(*) from sweep where input_table='btc2' "
+                                + "and run_id='btc2/alloc_50'")))
+        .isEqualTo(btc2.getTable().rowCount());
+
+    // each input gives the same result as a sweep over that table alone
+    var single =
+        StrategySweep.create(tape)
+            .inputTable(btc2)
+            .resultTable("sweep_single")
+            .addRun(
+                "alloc_50",
+                new Portfolio().cash(10000).assetSymbol("X:BTC"),
+                fixedAllocation(50))
+            .execute();
+    Assertions.assertThat(result.get("btc2/alloc_50").getPortfolioValue())
+        .isEqualTo(single.get("alloc_50").getPortfolioValue());
+    Assertions.assertThat(result.get("btc/alloc_50").getPortfolioValue())
+        .isNotEqualTo(single.get("alloc_50").getPortfolioValue());
+  }
+
+  @Test
+  public void testAddRunRequiresSingleInput() {
+    BarSeriesTable btc = tape.importTable("btc", new File("./btc.csv"));
+    BarSeriesTable btc2 = tape.importTable("btc2", new File("./btc.csv"));
+    try {
+      StrategySweep.create(tape)
+          .addInputTable(btc)
+          .addInputTable(btc2)
+          .addRun("a", new Portfolio().cash(10000), fixedAllocation(10))
+          .execute();
+      Assertions.failBecauseExceptionWasNotThrown(IllegalStateException.class);
+    } catch (IllegalStateException e) {
+      Assertions.assertThat(e).hasMessageContaining("single input table");
+    }
+  }
+
+  @Test
+  public void testSharedPortfolio() {
+    BarSeriesTable t = tape.importTable("btc", new File("./btc.csv"));
+    Portfolio p = new Portfolio().cash(10000);
+    try {
+      StrategySweep.create(tape)
+          .inputTable(t)
+          .addRun("a", p, fixedAllocation(10))
+          .addRun("b", p, fixedAllocation(20))
+          .execute();
+      Assertions.failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+    } catch (IllegalArgumentException e) {
+      Assertions.assertThat(e).hasMessageContaining("shared");
+    }
+  }
+}
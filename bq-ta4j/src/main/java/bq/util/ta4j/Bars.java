@@ -13,8 +13,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.ObjIntConsumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.ta4j.core.Bar;
 import org.ta4j.core.BarSeries;
@@ -32,7 +34,12 @@ public class Bars {
    * @return
    */
   public static Stream<Item<Bar>> itemStream(BarSeries barSeries) {
-    return itemList(barSeries).stream();
+    Preconditions.checkNotNull(barSeries, "BarSeries cannot be null");
+    if (barSeries.isEmpty()) {
+      return Stream.empty();
+    }
+    return IntStream.rangeClosed(barSeries.getBeginIndex(), barSeries.getEndIndex())
+        .mapToObj(i -> Item.of(barSeries.getBar(i), i));
   }
 
   /**
@@ -56,29 +63,72 @@ public class Bars {
   }
 
   public static Stream<Bar> stream(BarSeries barSeries) {
+    Preconditions.checkNotNull(barSeries, "BarSeries cannot be null");
+    if (barSeries instanceof ImmutableBarSeries) {
+      return ((ImmutableBarSeries) barSeries).bars().stream();
+    }
     return toList(barSeries).stream();
   }
 
+  /**
+   * Calls the action with each bar and its index, in order. Unlike itemStream(), nothing is
+   * allocated per bar.
+   */
+  public static void forEach(BarSeries barSeries, ObjIntConsumer<Bar> action) {
+    Preconditions.checkNotNull(barSeries, "BarSeries cannot be null");
+    if (barSeries.isEmpty()) {
+      return;
+    }
+    for (int i = barSeries.getBeginIndex(); i <= barSeries.getEndIndex(); i++) {
+      action.accept(barSeries.getBar(i), i);
+    }
+  }
+
   private static Optional<Bar> findBar(BarSeries bs, ZonedDateTime dt) {
     // I think it is a mistake to implement this method. There are many
     // edge cases
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * Returns the date index of a series. It is cached by ImmutableBarSeries, but has to be built on
+   * each call for other implementations.
+   */
+  public static EpochDayIndex dateIndex(BarSeries bs) {
+    Preconditions.checkNotNull(bs, "BarSeries cannot be null");
+    if (bs instanceof ImmutableBarSeries) {
+      return ((ImmutableBarSeries) bs).getDateIndex();
+    }
+    return EpochDayIndex.of(bs);
+  }
+
   public static Optional<Bar> findBarOnOrAfter(BarSeries bs, ZonedDateTime dt) {
     Preconditions.checkNotNull(dt);
-    return toStream(bs).filter(notBefore(dt)).findFirst();
+    // bars are indexed by the date in their own zone, which may differ from that of dt by a day
+    int i = dateIndex(bs).ceilingIndex(dt.toLocalDate().minusDays(1));
+    if (i < 0) {
+      return Optional.empty();
+    }
+    for (; i <= bs.getEndIndex(); i++) {
+      Bar b = bs.getBar(i);
+      if (!b.getBeginTime().isBefore(dt)) {
+        return Optional.of(b);
+      }
+    }
+    return Optional.empty();
   }
 
   public static Optional<Bar> findBarOnOrAfter(BarSeries bs, LocalDate d) {
     Preconditions.checkNotNull(d);
-    return toStream(bs).filter(notBefore(d)).findFirst();
+    int i = dateIndex(bs).ceilingIndex(d);
+    return i < 0 ? Optional.empty() : Optional.of(bs.getBar(i));
   }
 
   public static Optional<Bar> findBar(BarSeries bs, LocalDate d) {
 
     Preconditions.checkNotNull(d);
-    return toStream(bs).filter(on(d)).findFirst();
+    int i = dateIndex(bs).indexOf(d);
+    return i < 0 ? Optional.empty() : Optional.of(bs.getBar(i));
   }
 
   public static List<Bar> toList(BarSeries barSeries) {
@@ -87,9 +137,9 @@ public class Bars {
     if (barSeries instanceof ImmutableBarSeries) {
       // With ImmutableBarSeries we are certain that there is none of the crazy
       // mutable
-      // implementation in barSeries, so we can just return.
+      // implementation in barSeries, so we can just return the (unmodifiable) list.
       ImmutableBarSeries bs = (ImmutableBarSeries) barSeries;
-      return List.copyOf(bs.barList);
+      return bs.barList;
     } else {
       List<Bar> copy = Lists.newArrayList();
       for (int i = barSeries.getBeginIndex(); i <= barSeries.getEndIndex(); i++) {
@@ -229,6 +279,43 @@ public class Bars {
     return x;
   }
 
+  /**
+   * Merges two lists that are each in ascending date order. Every bar in base is kept, so existing
+   * data always wins. Bars in additions are dropped if their beginTime is already present in base,
+   * or if they repeat the beginTime of an earlier addition. This is the linear equivalent of adding
+   * difference(additions, base) to base and re-sorting.
+   */
+  public static List<Bar> mergeSorted(List<Bar> base, List<Bar> additions) {
+    Preconditions.checkNotNull(base);
+    Preconditions.checkNotNull(additions);
+    List<Bar> merged = Lists.newArrayListWithCapacity(base.size() + additions.size());
+    int i = 0;
+    int j = 0;
+    long lastBase = Long.MIN_VALUE;
+    long lastAddition = Long.MIN_VALUE;
+    while (i < base.size() || j < additions.size()) {
+      long t1 = i < base.size() ? epochSecond(base.get(i)) : Long.MAX_VALUE;
+      long t2 = j < additions.size() ? epochSecond(additions.get(j)) : Long.MAX_VALUE;
+      if (i < base.size() && t1 <= t2) {
+        Preconditions.checkArgument(t1 >= lastBase, "bars must be in ascending date order");
+        merged.add(base.get(i++));
+        lastBase = t1;
+      } else {
+        Preconditions.checkArgument(t2 >= lastAddition, "bars must be in ascending date order");
+        if (t2 != lastBase && t2 != lastAddition) {
+          merged.add(additions.get(j));
+        }
+        j++;
+        lastAddition = t2;
+      }
+    }
+    return merged;
+  }
+
+  private static long epochSecond(Bar b) {
+    return b.getBeginTime().toEpochSecond();
+  }
+
   public static BarSeries sort(BarSeries b) {
     List<Bar> bars = toList(b).stream().sorted(Bars.ascendingDateOrder()).toList();
     return ImmutableBarSeries.of(bars, b.getName());
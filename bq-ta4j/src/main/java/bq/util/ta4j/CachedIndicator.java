@@ -1,48 +1,58 @@
 package bq.util.ta4j;
 
 import com.google.common.base.Preconditions;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.Arrays;
+import java.util.BitSet;
 import org.ta4j.core.BarSeries;
 import org.ta4j.core.Indicator;
+import org.ta4j.core.num.DoubleNum;
+import org.ta4j.core.num.NaN;
 import org.ta4j.core.num.Num;
 
 /**
- * Simpler alternative to TA4J's odd implementation.
+ * Simpler alternative to TA4J's odd implementation. Values are memoized in a double[] indexed by
+ * bar index, with a bitset recording which indexes have been computed, and never expire.
+ *
+ * <p>In append-aware mode, which is the default for series other than ImmutableBarSeries, the
+ * value of the last bar is never cached because that bar may still be updated, and the cache grows
+ * as bars are added.
+ *
+ * <p>Values are held as doubles, so they are returned as DoubleNum. Not thread-safe.
  */
 public abstract class CachedIndicator implements Indicator<Num> {
 
   BarSeries barSeries;
 
-  Cache<Integer, Optional<Num>> cache;
+  final boolean appendAware;
+
+  double[] values;
+  final BitSet computed = new BitSet();
+  final BitSet nulls = new BitSet();
 
   public CachedIndicator(BarSeries barSeries) {
-    this(
-        barSeries,
-        CacheBuilder.newBuilder()
-            .expireAfterWrite(10, TimeUnit.SECONDS)
-            .maximumSize(10000)
-            .build());
+    this(barSeries, isAppendable(barSeries));
   }
 
-  public CachedIndicator(BarSeries barSeries, Cache<Integer, Optional<Num>> cache) {
+  public CachedIndicator(BarSeries barSeries, boolean appendAware) {
     this.barSeries = barSeries;
-    Preconditions.checkNotNull(cache, "cache");
-    this.cache = cache;
+    this.appendAware = appendAware;
+    this.values = new double[barSeries != null ? Math.max(barSeries.getEndIndex() + 1, 0) : 0];
+  }
+
+  static boolean isAppendable(BarSeries barSeries) {
+    return barSeries != null && !(barSeries instanceof ImmutableBarSeries);
   }
 
   public static Indicator<Num> of(Indicator<Num> uncachedIndicator) {
-    return of(uncachedIndicator, defaultCache());
+    Preconditions.checkNotNull(uncachedIndicator);
+    return of(uncachedIndicator, isAppendable(uncachedIndicator.getBarSeries()));
   }
 
-  public static Indicator<Num> of(
-      final Indicator<Num> uncachedIndicator, Cache<Integer, Optional<Num>> cache) {
+  public static Indicator<Num> of(final Indicator<Num> uncachedIndicator, boolean appendAware) {
 
     Preconditions.checkNotNull(uncachedIndicator);
     CachedIndicator ci =
-        new CachedIndicator(uncachedIndicator.getBarSeries(), cache) {
+        new CachedIndicator(uncachedIndicator.getBarSeries(), appendAware) {
 
           @Override
           public Num calculate(int index) {
@@ -65,14 +75,53 @@ public abstract class CachedIndicator implements Indicator<Num> {
 
   @Override
   public Num getValue(int index) {
-    Optional<Num> val = cache.getIfPresent(index);
-    if (val != null) {
-      return val.orElse(null);
+    if (index >= 0 && computed.get(index)) {
+      if (nulls.get(index)) {
+        return null;
+      }
+      return toNum(values[index]);
     }
 
     Num v = calculate(index);
-    cache.put(index, Optional.ofNullable(v));
-    return v;
+    double d = v != null ? v.doubleValue() : Double.NaN;
+    if (isCacheable(index)) {
+      grow(index);
+      if (v == null) {
+        nulls.set(index);
+      } else {
+        values[index] = d;
+      }
+      computed.set(index);
+    }
+    // same representation as a cache hit, whether or not the value was cached
+    return v != null ? toNum(d) : null;
+  }
+
+  private void grow(int index) {
+    if (index >= values.length) {
+      values = Arrays.copyOf(values, Math.max(index + 1, Math.max(values.length * 2, 16)));
+    }
+  }
+
+  static Num toNum(double d) {
+    return Double.isNaN(d) ? NaN.NaN : DoubleNum.valueOf(d);
+  }
+
+  /** Value at the given index as a double, NaN if the value is null. */
+  public double getDouble(int index) {
+    Num v = getValue(index);
+    return v != null ? v.doubleValue() : Double.NaN;
+  }
+
+  boolean isCacheable(int index) {
+    if (index < 0) {
+      return false;
+    }
+    if (appendAware) {
+      BarSeries bs = getBarSeries();
+      return bs == null || index < bs.getEndIndex();
+    }
+    return true;
   }
 
   public abstract Num calculate(int index);
@@ -86,11 +135,4 @@ public abstract class CachedIndicator implements Indicator<Num> {
   public BarSeries getBarSeries() {
     return barSeries;
   }
-
-  private static Cache<Integer, Optional<Num>> defaultCache() {
-    return CacheBuilder.newBuilder()
-        .expireAfterWrite(30, TimeUnit.SECONDS)
-        .maximumSize(10000)
-        .build();
-  }
 }
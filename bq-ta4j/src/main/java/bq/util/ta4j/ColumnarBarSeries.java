@@ -0,0 +1,358 @@
+package bq.util.ta4j;
+
+import bq.util.Zones;
+import com.google.common.base.Preconditions;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.RandomAccess;
+import org.ta4j.core.Bar;
+import org.ta4j.core.BarSeries;
+import org.ta4j.core.num.DoubleNum;
+import org.ta4j.core.num.Num;
+
+/**
+ * Daily BarSeries whose data is held in primitive arrays, one per column. Bar instances are
+ * lightweight views over the arrays and are created on demand. Missing (NULL) prices are stored as
+ * NaN and are presented as null Num values, just like ImmutableBar. Dates must be in ascending
+ * order, but need not be unique.
+ */
+public class ColumnarBarSeries extends ImmutableBarSeries {
+
+  private static final Duration ONE_DAY = Duration.ofDays(1);
+
+  final long[] epochDay;
+  final double[] open;
+  final double[] high;
+  final double[] low;
+  final double[] close;
+  final double[] volume;
+  final long[] rowId;
+  // a sub-series shares the arrays of its parent and covers [offset, offset + size)
+  final int offset;
+  final int size;
+
+  /**
+   * The arrays are NOT copied. Ownership passes to the series and they must not be modified
+   * afterwards.
+   */
+  ColumnarBarSeries(
+      long[] epochDay,
+      double[] open,
+      double[] high,
+      double[] low,
+      double[] close,
+      double[] volume,
+      long[] rowId,
+      String name) {
+    super(List.of(), name);
+    Preconditions.checkNotNull(epochDay, "epochDay");
+    this.size = epochDay.length;
+    Preconditions.checkArgument(open.length == size, "open length");
+    Preconditions.checkArgument(high.length == size, "high length");
+    Preconditions.checkArgument(low.length == size, "low length");
+    Preconditions.checkArgument(close.length == size, "close length");
+    Preconditions.checkArgument(volume.length == size, "volume length");
+    Preconditions.checkArgument(rowId == null || rowId.length == size, "rowId length");
+    // several bars may share a date, as they could in DuckBarSeries before it was columnar; date
+    // lookups return the first of them
+    for (int i = 1; i < size; i++) {
+      Preconditions.checkArgument(
+          epochDay[i] >= epochDay[i - 1], "dates must be in ascending order");
+    }
+    this.epochDay = epochDay;
+    this.open = open;
+    this.high = high;
+    this.low = low;
+    this.close = close;
+    this.volume = volume;
+    this.rowId = rowId;
+    this.offset = 0;
+    this.barList = new BarView();
+  }
+
+  /** View of [offset, offset + size) of another series, sharing its arrays. */
+  private ColumnarBarSeries(ColumnarBarSeries src, int offset, int size, String name) {
+    super(List.of(), name);
+    this.epochDay = src.epochDay;
+    this.open = src.open;
+    this.high = src.high;
+    this.low = src.low;
+    this.close = src.close;
+    this.volume = src.volume;
+    this.rowId = src.rowId;
+    this.offset = offset;
+    this.size = size;
+    this.barList = new BarView();
+  }
+
+  /** Shares the column arrays of another series. */
+  protected ColumnarBarSeries(ColumnarBarSeries src, String name) {
+    this(src, src.offset, src.size, name);
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static ColumnarBarSeries of(
+      long[] epochDay,
+      double[] open,
+      double[] high,
+      double[] low,
+      double[] close,
+      double[] volume,
+      long[] rowId,
+      String name) {
+    return new ColumnarBarSeries(epochDay, open, high, low, close, volume, rowId, name);
+  }
+
+  @Override
+  public Bar getBar(int i) {
+    Preconditions.checkElementIndex(i, size);
+    return new ColumnarBar(this, i);
+  }
+
+  @Override
+  public int getBarCount() {
+    return size;
+  }
+
+  /** Returns a view of the bars in [startIndex, endIndex). No data is copied. */
+  @Override
+  public BarSeries getSubSeries(int startIndex, int endIndex) {
+    Preconditions.checkPositionIndexes(startIndex, endIndex, size);
+    return new ColumnarBarSeries(this, offset + startIndex, endIndex - startIndex, getName());
+  }
+
+  /** Epoch days of the bars in this series, copied only if this is a sub-series. */
+  long[] epochDays() {
+    if (offset == 0 && size == epochDay.length) {
+      return epochDay;
+    }
+    return Arrays.copyOfRange(epochDay, offset, offset + size);
+  }
+
+  public long getEpochDay(int i) {
+    return epochDay[offset + i];
+  }
+
+  public LocalDate getDate(int i) {
+    return LocalDate.ofEpochDay(epochDay[offset + i]);
+  }
+
+  public double getOpen(int i) {
+    return open[offset + i];
+  }
+
+  public double getHigh(int i) {
+    return high[offset + i];
+  }
+
+  public double getLow(int i) {
+    return low[offset + i];
+  }
+
+  public double getClose(int i) {
+    return close[offset + i];
+  }
+
+  public double getVolume(int i) {
+    return volume[offset + i];
+  }
+
+  public Optional<Long> getRowId(int i) {
+    if (rowId == null) {
+      return Optional.empty();
+    }
+    return Optional.of(rowId[offset + i]);
+  }
+
+  static Num toNum(double d) {
+    if (Double.isNaN(d)) {
+      return null;
+    }
+    return DoubleNum.valueOf(d);
+  }
+
+  class BarView extends AbstractList<Bar> implements RandomAccess {
+
+    @Override
+    public Bar get(int index) {
+      return getBar(index);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  /**
+   * Flyweight over a single index of a ColumnarBarSeries. It extends ImmutableBar so that existing
+   * code that casts to ImmutableBar continues to work, but none of the inherited fields are used.
+   */
+  static class ColumnarBar extends ImmutableBar {
+
+    final ColumnarBarSeries series;
+    final int index;
+
+    ColumnarBar(ColumnarBarSeries series, int index) {
+      this.series = series;
+      this.index = index;
+    }
+
+    @Override
+    public Duration getTimePeriod() {
+      return ONE_DAY;
+    }
+
+    @Override
+    public LocalDate getDate() {
+      return series.getDate(index);
+    }
+
+    @Override
+    public ZonedDateTime getBeginTime() {
+      return getDate().atStartOfDay(Zones.UTC);
+    }
+
+    @Override
+    public ZonedDateTime getEndTime() {
+      return getDate().plusDays(1).atStartOfDay(Zones.UTC);
+    }
+
+    @Override
+    public Num getOpenPrice() {
+      return toNum(series.getOpen(index));
+    }
+
+    @Override
+    public Num getHighPrice() {
+      return toNum(series.getHigh(index));
+    }
+
+    @Override
+    public Num getLowPrice() {
+      return toNum(series.getLow(index));
+    }
+
+    @Override
+    public Num getClosePrice() {
+      return toNum(series.getClose(index));
+    }
+
+    @Override
+    public Num getVolume() {
+      return toNum(series.getVolume(index));
+    }
+
+    @Override
+    public Optional<Long> getId() {
+      return series.getRowId(index);
+    }
+
+    @Override
+    public String toString() {
+      return ImmutableBar.create(
+              getDate(),
+              getOpenPrice(),
+              getHighPrice(),
+              getLowPrice(),
+              getClosePrice(),
+              getVolume())
+          .toString();
+    }
+  }
+
+  /** Accumulates rows into growable primitive arrays. */
+  public static class Builder {
+
+    long[] epochDay = new long[256];
+    double[] open = new double[256];
+    double[] high = new double[256];
+    double[] low = new double[256];
+    double[] close = new double[256];
+    double[] volume = new double[256];
+    long[] rowId = new long[256];
+    // set by the first add(); rows with and without ids cannot be mixed
+    Boolean hasRowId = null;
+    int size;
+
+    Builder() {}
+
+    public Builder add(
+        long epochDay, double open, double high, double low, double close, double volume) {
+      checkRowId(false);
+      return append(epochDay, open, high, low, close, volume, -1);
+    }
+
+    public Builder add(
+        long epochDay,
+        double open,
+        double high,
+        double low,
+        double close,
+        double volume,
+        long rowId) {
+      checkRowId(true);
+      return append(epochDay, open, high, low, close, volume, rowId);
+    }
+
+    private void checkRowId(boolean withRowId) {
+      if (hasRowId == null) {
+        hasRowId = withRowId;
+      }
+      Preconditions.checkState(
+          hasRowId == withRowId, "rows with and without a rowId cannot be mixed");
+    }
+
+    private Builder append(
+        long epochDay,
+        double open,
+        double high,
+        double low,
+        double close,
+        double volume,
+        long rowId) {
+      if (size == this.epochDay.length) {
+        grow(size * 2);
+      }
+      this.epochDay[size] = epochDay;
+      this.open[size] = open;
+      this.high[size] = high;
+      this.low[size] = low;
+      this.close[size] = close;
+      this.volume[size] = volume;
+      this.rowId[size] = rowId;
+      size++;
+      return this;
+    }
+
+    void grow(int capacity) {
+      epochDay = Arrays.copyOf(epochDay, capacity);
+      open = Arrays.copyOf(open, capacity);
+      high = Arrays.copyOf(high, capacity);
+      low = Arrays.copyOf(low, capacity);
+      close = Arrays.copyOf(close, capacity);
+      volume = Arrays.copyOf(volume, capacity);
+      rowId = Arrays.copyOf(rowId, capacity);
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public ColumnarBarSeries build(String name) {
+      if (epochDay.length != size) {
+        grow(size);
+      }
+      long[] ids = Boolean.TRUE.equals(hasRowId) ? rowId : null;
+      return new ColumnarBarSeries(epochDay, open, high, low, close, volume, ids, name);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package bq.util.ta4j;
+
+import com.google.common.base.Preconditions;
+import java.time.LocalDate;
+import org.ta4j.core.BarSeries;
+
+/**
+ * Sorted epoch days of the bars in a series, for O(log n) date lookup. Bars are keyed by the local
+ * date of their begin time. Lookups return series indexes (i.e. offset by the begin index), or -1
+ * if there is no such bar.
+ */
+public class EpochDayIndex {
+
+  final long[] epochDay;
+  final int beginIndex;
+
+  EpochDayIndex(long[] epochDay, int beginIndex) {
+    this.epochDay = epochDay;
+    this.beginIndex = beginIndex;
+  }
+
+  public static EpochDayIndex of(BarSeries series) {
+    Preconditions.checkNotNull(series, "series");
+    if (series instanceof ColumnarBarSeries) {
+      // already sorted and immutable, so the array can be shared
+      return new EpochDayIndex(((ColumnarBarSeries) series).epochDays(), 0);
+    }
+    int n = series.getBarCount();
+    int begin = Math.max(series.getBeginIndex(), 0);
+    long[] days = new long[n];
+    for (int i = 0; i < n; i++) {
+      days[i] = series.getBar(begin + i).getBeginTime().toLocalDate().toEpochDay();
+      Preconditions.checkArgument(
+          i == 0 || days[i] >= days[i - 1], "bars must be in ascending date order");
+    }
+    return new EpochDayIndex(days, begin);
+  }
+
+  public int size() {
+    return epochDay.length;
+  }
+
+  public long getEpochDay(int index) {
+    return epochDay[index - beginIndex];
+  }
+
+  /** Index of the bar on the given day. */
+  public int indexOf(long day) {
+    int i = lowerBound(day);
+    return i < epochDay.length && epochDay[i] == day ? i + beginIndex : -1;
+  }
+
+  /** Index of the last bar on or before the given day. */
+  public int floorIndex(long day) {
+    int i = upperBound(day) - 1;
+    return i >= 0 ? i + beginIndex : -1;
+  }
+
+  /** Index of the first bar on or after the given day. */
+  public int ceilingIndex(long day) {
+    int i = lowerBound(day);
+    return i < epochDay.length ? i + beginIndex : -1;
+  }
+
+  public int indexOf(LocalDate d) {
+    return indexOf(d.toEpochDay());
+  }
+
+  public int floorIndex(LocalDate d) {
+    return floorIndex(d.toEpochDay());
+  }
+
+  public int ceilingIndex(LocalDate d) {
+    return ceilingIndex(d.toEpochDay());
+  }
+
+  // first position with epochDay >= day
+  private int lowerBound(long day) {
+    int lo = 0;
+    int hi = epochDay.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (epochDay[mid] < day) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  // first position with epochDay > day
+  private int upperBound(long day) {
+    int lo = 0;
+    int hi = epochDay.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (epochDay[mid] <= day) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+}
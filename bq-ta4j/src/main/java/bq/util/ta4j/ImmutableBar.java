@@ -101,7 +101,8 @@ public class ImmutableBar implements Bar, Comparable<Bar> {
 
   public static Bar copyOf(Bar b) {
     Preconditions.checkNotNull(b);
-    if (b instanceof ImmutableBar) {
+    if (b.getClass() == ImmutableBar.class) {
+      // subclasses (e.g. columnar flyweights) may not populate the fields
       ImmutableBar src = (ImmutableBar) b;
       ImmutableBar copy = new ImmutableBar();
       copy.beginTime = src.beginTime;
@@ -5,7 +5,9 @@ import com.google.common.base.MoreObjects.ToStringHelper;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import java.time.Duration;
+import java.time.LocalDate;
 import java.time.ZonedDateTime;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import org.ta4j.core.Bar;
@@ -19,6 +21,9 @@ public class ImmutableBarSeries implements BarSeries, Iterable<Bar> {
 
   List<Bar> barList;
 
+  // built on first date lookup; the bars never change, so neither does the index
+  private transient volatile EpochDayIndex dateIndex;
+
   public static BarSeries of(List<Bar> bars) {
     return of(bars, null);
   }
@@ -35,6 +40,20 @@ public class ImmutableBarSeries implements BarSeries, Iterable<Bar> {
     return bs;
   }
 
+  /** Like of(), but skips the sort when bars are already in ascending date order. */
+  public static BarSeries ofSorted(List<Bar> bars, String name) {
+    if (bars == null) {
+      return of(bars, name);
+    }
+    Comparator<Bar> order = Bars.ascendingDateOrder();
+    for (int i = 1; i < bars.size(); i++) {
+      if (order.compare(bars.get(i - 1), bars.get(i)) > 0) {
+        return of(bars, name);
+      }
+    }
+    return new ImmutableBarSeries(bars, name);
+  }
+
   public static BarSeries copyOf(BarSeries barSeries) {
     Preconditions.checkNotNull(barSeries);
     if (barSeries instanceof ImmutableBarSeries) {
@@ -82,9 +101,10 @@ public class ImmutableBarSeries implements BarSeries, Iterable<Bar> {
     return barList.size();
   }
 
+  /** Returns the bars without copying. The list is unmodifiable. */
   @Override
   public List<Bar> getBarData() {
-    return List.copyOf(barList);
+    return barList;
   }
 
   @Override
@@ -178,14 +198,41 @@ public class ImmutableBarSeries implements BarSeries, Iterable<Bar> {
     throw new UnsupportedOperationException();
   }
 
+  /** Returns a view of the bars in [startIndex, endIndex). No bars are copied. */
   @Override
   public BarSeries getSubSeries(int startIndex, int endIndex) {
 
-    ImmutableBarSeries x = new ImmutableBarSeries(barList.subList(startIndex, endIndex), name);
+    ImmutableBarSeries x = new ImmutableBarSeries(List.of(), name);
+    // barList is unmodifiable, and so is any sub-list of it
+    x.barList = barList.subList(startIndex, endIndex);
 
     return x;
   }
 
+  public EpochDayIndex getDateIndex() {
+    EpochDayIndex idx = dateIndex;
+    if (idx == null) {
+      idx = EpochDayIndex.of(this);
+      dateIndex = idx;
+    }
+    return idx;
+  }
+
+  /** Index of the bar on the given date, or -1 if there is none. */
+  public int indexOf(LocalDate d) {
+    return getDateIndex().indexOf(d);
+  }
+
+  /** Index of the last bar on or before the given date, or -1 if there is none. */
+  public int floorIndex(LocalDate d) {
+    return getDateIndex().floorIndex(d);
+  }
+
+  /** Index of the first bar on or after the given date, or -1 if there is none. */
+  public int ceilingIndex(LocalDate d) {
+    return getDateIndex().ceilingIndex(d);
+  }
+
   public List<Bar> bars() {
     return this.barList; // safe!
   }
@@ -0,0 +1,89 @@
+package bq.util.ta4j;
+
+import com.google.common.collect.Lists;
+import com.google.common.flogger.FluentLogger;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.ta4j.core.Bar;
+import org.ta4j.core.BarSeries;
+
+/**
+ * Measures the bytes allocated by the BarSeries access paths that indicators use in loops, against
+ * the copies they used to make. Allocation is measured per thread, so the numbers are stable
+ * enough to assert on, unlike timings.
+ */
+public class BarSeriesAllocationBenchmarkTest {
+
+  static FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final int BARS = 5000;
+  static final int ITERATIONS = 200;
+
+  static long allocatedBytes(BarSeries bs, ToLongFunction<BarSeries> op) {
+    com.sun.management.ThreadMXBean mx =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long sink = 0;
+    // warm up so that class loading and JIT compilation are not counted
+    for (int i = 0; i < ITERATIONS; i++) {
+      sink += op.applyAsLong(bs);
+    }
+    long before = mx.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < ITERATIONS; i++) {
+      sink += op.applyAsLong(bs);
+    }
+    long bytes = mx.getCurrentThreadAllocatedBytes() - before;
+    Assertions.assertThat(sink).isNotZero();
+    return bytes / ITERATIONS;
+  }
+
+  BarSeries createSeries() {
+    ColumnarBarSeries.Builder b = ColumnarBarSeries.newBuilder();
+    LocalDate start = LocalDate.of(2010, 1, 1);
+    for (int i = 0; i < BARS; i++) {
+      b.add(start.plusDays(i).toEpochDay(), i, i, i, i, i);
+    }
+    return ImmutableBarSeries.copyOf(b.build("bench"));
+  }
+
+  @Test
+  public void testAllocation() {
+    Assumptions.assumeTrue(
+        ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    BarSeries bs = createSeries();
+
+    long copy = allocatedBytes(bs, s -> List.copyOf(Lists.newArrayList(s.getBarData())).size());
+    long barData = allocatedBytes(bs, s -> s.getBarData().size());
+    long toList = allocatedBytes(bs, s -> Bars.toList(s).size());
+    long subSeries = allocatedBytes(bs, s -> s.getSubSeries(100, 4100).getBarCount());
+    long items = allocatedBytes(bs, s -> Bars.itemStream(s).mapToLong(it -> it.index()).sum());
+    long itemList =
+        allocatedBytes(bs, s -> Bars.itemList(s).stream().mapToLong(it -> it.index()).sum());
+    long forEach =
+        allocatedBytes(
+            bs,
+            s -> {
+              long[] n = new long[1];
+              Bars.forEach(s, (bar, i) -> n[0] += i);
+              return n[0];
+            });
+
+    logger.atInfo().log(
+        "bytes per call (%s bars): copy=%s getBarData=%s toList=%s getSubSeries=%s"
+            + " itemList=%s itemStream=%s forEach=%s",
+        BARS, copy, barData, toList, subSeries, itemList, items, forEach);
+
+    // a copy of the bar list is at least one reference per bar
+    Assertions.assertThat(copy).isGreaterThan(BARS * 4L);
+    Assertions.assertThat(barData).isLessThan(copy / 100);
+    Assertions.assertThat(toList).isLessThan(copy / 100);
+    Assertions.assertThat(subSeries).isLessThan(copy / 100);
+    Assertions.assertThat(forEach).isLessThan(copy / 100);
+    // itemStream() still creates an Item per bar, but no longer collects them into a list
+    Assertions.assertThat(items).isLessThan(itemList);
+  }
+}
@@ -1,5 +1,6 @@
 package bq.util.ta4j;
 
+import bq.util.Zones;
 import com.google.common.collect.Lists;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
@@ -45,6 +46,44 @@ public class BarsTest {
         .contains("2024-10-31");
   }
 
+  @Test
+  public void testIndexedLookup() {
+    List<Bar> bars = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      LocalDate d = LocalDate.of(2024, 10, 28).plusDays(i);
+      if (d.getDayOfWeek() != DayOfWeek.SATURDAY && d.getDayOfWeek() != DayOfWeek.SUNDAY) {
+        bars.add(ImmutableBar.create(d, i, i, i, i, i));
+      }
+    }
+    ImmutableBarSeries bs = (ImmutableBarSeries) ImmutableBarSeries.of(bars);
+    BaseBarSeries base = new BaseBarSeriesBuilder().withBars(bars).build();
+
+    LocalDate saturday = LocalDate.of(2024, 11, 2);
+    LocalDate monday = LocalDate.of(2024, 11, 4);
+
+    Assertions.assertThat(bs.indexOf(monday)).isEqualTo(5);
+    Assertions.assertThat(bs.indexOf(saturday)).isEqualTo(-1);
+    Assertions.assertThat(bs.floorIndex(saturday)).isEqualTo(4);
+    Assertions.assertThat(bs.ceilingIndex(saturday)).isEqualTo(5);
+    Assertions.assertThat(bs.ceilingIndex(LocalDate.of(2030, 1, 1))).isEqualTo(-1);
+
+    for (BarSeries series : List.<BarSeries>of(bs, base)) {
+      Assertions.assertThat(Bars.findBar(series, saturday)).isEmpty();
+      Assertions.assertThat(Bars.findBar(series, monday).get().getBeginTime().toLocalDate())
+          .isEqualTo(monday);
+      Assertions.assertThat(
+              Bars.findBarOnOrAfter(series, saturday).get().getBeginTime().toLocalDate())
+          .isEqualTo(monday);
+      // midday on monday is after the monday bar begins
+      Assertions.assertThat(
+              Bars.findBarOnOrAfter(series, monday.atTime(12, 0).atZone(Zones.UTC))
+                  .get()
+                  .getBeginTime()
+                  .toLocalDate())
+          .isEqualTo(monday.plusDays(1));
+    }
+  }
+
   boolean isWeekend(Bar b) {
     DayOfWeek dow = b.getBeginTime().toLocalDate().getDayOfWeek();
     if (dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY) {
@@ -69,6 +108,55 @@ public class BarsTest {
         .doesNotContainAnyElementsOf(weekendBars);
   }
 
+  @Test
+  public void testMergeSorted() {
+    List<Bar> base = Lists.newArrayList();
+    List<Bar> additions = Lists.newArrayList();
+    LocalDate d = LocalDate.of(2024, 10, 1);
+    for (int i = 0; i < 10; i++) {
+      if (i != 4) {
+        base.add(ImmutableBar.create(d.plusDays(i), 1d, 1d, 1d, 1d, 1d));
+      }
+    }
+    for (int i = 3; i < 15; i++) {
+      additions.add(ImmutableBar.create(d.plusDays(i), 2d, 2d, 2d, 2d, 2d));
+    }
+
+    List<Bar> merged = Bars.mergeSorted(base, additions);
+
+    Assertions.assertThat(merged).hasSize(15);
+    for (int i = 0; i < merged.size(); i++) {
+      Bar b = merged.get(i);
+      Assertions.assertThat(b.getBeginTime().toLocalDate()).isEqualTo(d.plusDays(i));
+      // existing bars win; the gap and the new tail come from additions
+      double expected = (i == 4 || i >= 10) ? 2d : 1d;
+      Assertions.assertThat(b.getClosePrice().doubleValue()).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void testMergeSortedKeepsDuplicateBaseBars() {
+    LocalDate d = LocalDate.of(2024, 10, 1);
+    List<Bar> base =
+        List.of(
+            ImmutableBar.create(d, 1d, 1d, 1d, 1d, 1d),
+            ImmutableBar.create(d.plusDays(1), 1d, 1d, 1d, 1d, 1d),
+            ImmutableBar.create(d.plusDays(1), 3d, 3d, 3d, 3d, 3d),
+            ImmutableBar.create(d.plusDays(3), 1d, 1d, 1d, 1d, 1d));
+    List<Bar> additions =
+        List.of(
+            ImmutableBar.create(d.plusDays(1), 2d, 2d, 2d, 2d, 2d),
+            ImmutableBar.create(d.plusDays(2), 2d, 2d, 2d, 2d, 2d),
+            ImmutableBar.create(d.plusDays(2), 4d, 4d, 4d, 4d, 4d),
+            ImmutableBar.create(d.plusDays(4), 2d, 2d, 2d, 2d, 2d));
+
+    List<Bar> merged = Bars.mergeSorted(base, additions);
+
+    Assertions.assertThat(merged).hasSize(6).containsAll(base);
+    Assertions.assertThat(merged.get(3)).isSameAs(additions.get(1));
+    Assertions.assertThat(merged.get(5)).isSameAs(additions.get(3));
+  }
+
   @Test
   public void testComparator() {
     List<Bar> bars = Lists.newArrayList();
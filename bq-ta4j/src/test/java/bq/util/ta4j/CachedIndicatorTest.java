@@ -1,11 +1,19 @@
 package bq.util.ta4j;
 
+import com.google.common.collect.Lists;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.ta4j.core.Bar;
 import org.ta4j.core.BarSeries;
+import org.ta4j.core.BaseBarSeries;
+import org.ta4j.core.BaseBarSeriesBuilder;
 import org.ta4j.core.Indicator;
+import org.ta4j.core.num.DecimalNum;
 import org.ta4j.core.num.DoubleNum;
+import org.ta4j.core.num.NaN;
 import org.ta4j.core.num.Num;
 
 public class CachedIndicatorTest {
@@ -49,4 +57,111 @@ public class CachedIndicatorTest {
 
     Assertions.assertThat(callCount.get()).isEqualTo(100);
   }
+
+  Indicator<Num> counting(BarSeries bs, AtomicInteger callCount) {
+    return new Indicator<Num>() {
+
+      @Override
+      public Num getValue(int index) {
+        callCount.incrementAndGet();
+        return index % 7 == 0 ? null : getBarSeries().getBar(index).getClosePrice();
+      }
+
+      @Override
+      public int getUnstableBars() {
+        return 0;
+      }
+
+      @Override
+      public BarSeries getBarSeries() {
+        return bs;
+      }
+    };
+  }
+
+  List<Bar> createBars(int count) {
+    List<Bar> bars = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      bars.add(ImmutableBar.create(LocalDate.of(1990, 1, 1).plusDays(i), i, i, i, i, i));
+    }
+    return bars;
+  }
+
+  @Test
+  public void testLongSeries() {
+    // longer than the old cache, which used to evict values
+    BarSeries bs = ImmutableBarSeries.of(createBars(20000));
+    AtomicInteger callCount = new AtomicInteger();
+    CachedIndicator ci = (CachedIndicator) CachedIndicator.of(counting(bs, callCount));
+    Assertions.assertThat(ci.appendAware).isFalse();
+
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = 0; i < bs.getBarCount(); i++) {
+        if (i % 7 == 0) {
+          Assertions.assertThat(ci.getValue(i)).isNull();
+          Assertions.assertThat(ci.getDouble(i)).isNaN();
+        } else {
+          Assertions.assertThat(ci.getDouble(i)).isEqualTo(i);
+        }
+      }
+    }
+    Assertions.assertThat(callCount.get()).isEqualTo(20000);
+  }
+
+  @Test
+  public void testAppendAware() {
+    BaseBarSeries bs =
+        new BaseBarSeriesBuilder().withNumTypeOf(DoubleNum.ZERO).withBars(createBars(10)).build();
+    AtomicInteger callCount = new AtomicInteger();
+    CachedIndicator ci = (CachedIndicator) CachedIndicator.of(counting(bs, callCount));
+    Assertions.assertThat(ci.appendAware).isTrue();
+
+    for (int i = 0; i < 10; i++) {
+      ci.getValue(i);
+    }
+    Assertions.assertThat(callCount.get()).isEqualTo(10);
+
+    // the last bar is not cached, since it may still change
+    ci.getValue(9);
+    Assertions.assertThat(callCount.get()).isEqualTo(11);
+
+    bs.addBar(createBars(11).get(10));
+    for (int i = 0; i < 11; i++) {
+      ci.getValue(i);
+    }
+    // 9 is computed again, now that it is no longer the last bar; 10 is new
+    Assertions.assertThat(callCount.get()).isEqualTo(13);
+    ci.getValue(9);
+    Assertions.assertThat(callCount.get()).isEqualTo(13);
+  }
+
+  @Test
+  public void testSameRepresentationOnMissAndHit() {
+    BarSeries bs = ImmutableBarSeries.of(createBars(10));
+    Indicator<Num> x =
+        new Indicator<Num>() {
+
+          @Override
+          public Num getValue(int index) {
+            return index == 3 ? NaN.NaN : DecimalNum.valueOf(index);
+          }
+
+          @Override
+          public int getUnstableBars() {
+            return 0;
+          }
+
+          @Override
+          public BarSeries getBarSeries() {
+            return bs;
+          }
+        };
+    Indicator<Num> ci = CachedIndicator.of(x);
+
+    for (int pass = 0; pass < 2; pass++) {
+      Assertions.assertThat(ci.getValue(5)).isInstanceOf(DoubleNum.class);
+      Assertions.assertThat(ci.getValue(5).doubleValue()).isEqualTo(5);
+      Assertions.assertThat(ci.getValue(3)).isSameAs(NaN.NaN);
+    }
+  }
 }
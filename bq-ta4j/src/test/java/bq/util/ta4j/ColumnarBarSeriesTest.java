@@ -0,0 +1,114 @@
+package bq.util.ta4j;
+
+import java.time.LocalDate;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ta4j.core.Bar;
+import org.ta4j.core.BarSeries;
+
+public class ColumnarBarSeriesTest {
+
+  ColumnarBarSeries createSeries(int count) {
+    ColumnarBarSeries.Builder b = ColumnarBarSeries.newBuilder();
+    LocalDate start = LocalDate.of(2024, 10, 30);
+    for (int i = 0; i < count; i++) {
+      double v = i + 0.5;
+      b.add(start.plusDays(i).toEpochDay(), v, v + 1, v - 1, v, i == 3 ? Double.NaN : v * 10, i);
+    }
+    return b.build("test");
+  }
+
+  @Test
+  public void testIt() {
+    ColumnarBarSeries bs = createSeries(1000);
+
+    Assertions.assertThat(bs.getBarCount()).isEqualTo(1000);
+    Assertions.assertThat(bs.getBeginIndex()).isEqualTo(0);
+    Assertions.assertThat(bs.getEndIndex()).isEqualTo(999);
+    Assertions.assertThat(bs.getName()).isEqualTo("test");
+
+    Bar bar = bs.getBar(5);
+    Assertions.assertThat(bar.getBeginTime().toLocalDate()).isEqualTo(LocalDate.of(2024, 11, 4));
+    Assertions.assertThat(bar.getEndTime().toLocalDate()).isEqualTo(LocalDate.of(2024, 11, 5));
+    Assertions.assertThat(bar.getOpenPrice().doubleValue()).isEqualTo(5.5);
+    Assertions.assertThat(bar.getHighPrice().doubleValue()).isEqualTo(6.5);
+    Assertions.assertThat(bar.getLowPrice().doubleValue()).isEqualTo(4.5);
+    Assertions.assertThat(bar.getClosePrice().doubleValue()).isEqualTo(5.5);
+    Assertions.assertThat(bar.getVolume().doubleValue()).isEqualTo(55);
+    Assertions.assertThat(((ImmutableBar) bar).getId()).contains(5L);
+
+    // NaN is presented as null, the same as a NULL column
+    Assertions.assertThat(bs.getBar(3).getVolume()).isNull();
+    Assertions.assertThat(bs.getVolume(3)).isNaN();
+
+    Assertions.assertThat(bs.getClose(999)).isEqualTo(999.5);
+    Assertions.assertThat(bs.bars()).hasSize(1000);
+  }
+
+  @Test
+  public void testSubSeries() {
+    ColumnarBarSeries bs = createSeries(10);
+
+    BarSeries sub = bs.getSubSeries(2, 5);
+    Assertions.assertThat(sub.getBarCount()).isEqualTo(3);
+    Assertions.assertThat(sub.getBar(0).getClosePrice().doubleValue()).isEqualTo(2.5);
+    Assertions.assertThat(sub.getLastBar().getClosePrice().doubleValue()).isEqualTo(4.5);
+
+    // sub-series are views over the same arrays
+    ColumnarBarSeries view = (ColumnarBarSeries) sub;
+    Assertions.assertThat(view.close).isSameAs(bs.close);
+    Assertions.assertThat(view.getRowId(0)).contains(2L);
+    Assertions.assertThat(view.getDate(0)).isEqualTo(bs.getDate(2));
+    Assertions.assertThat(view.indexOf(bs.getDate(4))).isEqualTo(2);
+    Assertions.assertThat(view.indexOf(bs.getDate(5))).isEqualTo(-1);
+
+    BarSeries subSub = sub.getSubSeries(1, 3);
+    Assertions.assertThat(subSub.getBarCount()).isEqualTo(2);
+    Assertions.assertThat(subSub.getBar(0).getClosePrice().doubleValue()).isEqualTo(3.5);
+    Assertions.assertThat(subSub.getBarData()).hasSize(2);
+  }
+
+  @Test
+  public void testCopy() {
+    ColumnarBarSeries bs = createSeries(10);
+
+    Bar copy = ImmutableBar.copyOf(bs.getBar(4));
+    Assertions.assertThat(copy.getClosePrice().doubleValue()).isEqualTo(4.5);
+    Assertions.assertThat(copy.getBeginTime()).isEqualTo(bs.getBar(4).getBeginTime());
+  }
+
+  @Test
+  public void testOrder() {
+    long[] days = new long[] {2, 1};
+    double[] d = new double[2];
+    try {
+      ColumnarBarSeries.of(days, d, d, d, d, d, null, "test");
+      Assertions.failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+    } catch (IllegalArgumentException ignore) {
+
+    }
+  }
+
+  @Test
+  public void testDuplicateDates() {
+    long[] days = new long[] {1, 2, 2, 3};
+    double[] d = new double[] {1, 2, 3, 4};
+    ColumnarBarSeries bs = ColumnarBarSeries.of(days, d, d, d, d, d, null, "test");
+
+    Assertions.assertThat(bs.getBarCount()).isEqualTo(4);
+    Assertions.assertThat(bs.indexOf(LocalDate.ofEpochDay(2))).isEqualTo(1);
+    Assertions.assertThat(bs.floorIndex(LocalDate.ofEpochDay(2))).isEqualTo(2);
+    Assertions.assertThat(bs.ceilingIndex(LocalDate.ofEpochDay(3))).isEqualTo(3);
+  }
+
+  @Test
+  public void testMixedRowIds() {
+    ColumnarBarSeries.Builder b = ColumnarBarSeries.newBuilder().add(1, 1, 1, 1, 1, 1, 10);
+    Assertions.assertThatThrownBy(() -> b.add(2, 1, 1, 1, 1, 1))
+        .isInstanceOf(IllegalStateException.class);
+
+    ColumnarBarSeries noIds = ColumnarBarSeries.newBuilder().add(1, 1, 1, 1, 1, 1).build("x");
+    Assertions.assertThat(noIds.getRowId(0)).isEmpty();
+    Assertions.assertThat(b.build("y").getRowId(0)).contains(10L);
+  }
+}
@@ -0,0 +1,42 @@
+package bq.util.ta4j;
+
+import java.time.LocalDate;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ta4j.core.Bar;
+
+public class EpochDayIndexTest {
+
+  @Test
+  public void testLookup() {
+    LocalDate d0 = LocalDate.of(2024, 1, 1);
+    List<Bar> bars =
+        List.of(
+            ImmutableBar.create(d0, 1, 1, 1, 1, 1),
+            ImmutableBar.create(d0.plusDays(1), 2, 2, 2, 2, 2),
+            ImmutableBar.create(d0.plusDays(5), 3, 3, 3, 3, 3));
+    EpochDayIndex index = EpochDayIndex.of(ImmutableBarSeries.of(bars));
+
+    Assertions.assertThat(index.size()).isEqualTo(3);
+    Assertions.assertThat(index.indexOf(d0)).isEqualTo(0);
+    Assertions.assertThat(index.indexOf(d0.plusDays(5))).isEqualTo(2);
+    Assertions.assertThat(index.indexOf(d0.plusDays(2))).isEqualTo(-1);
+
+    Assertions.assertThat(index.floorIndex(d0.minusDays(1))).isEqualTo(-1);
+    Assertions.assertThat(index.floorIndex(d0.plusDays(3))).isEqualTo(1);
+    Assertions.assertThat(index.floorIndex(d0.plusDays(9))).isEqualTo(2);
+
+    Assertions.assertThat(index.ceilingIndex(d0.minusDays(1))).isEqualTo(0);
+    Assertions.assertThat(index.ceilingIndex(d0.plusDays(3))).isEqualTo(2);
+    Assertions.assertThat(index.ceilingIndex(d0.plusDays(9))).isEqualTo(-1);
+  }
+
+  @Test
+  public void testEmpty() {
+    EpochDayIndex index = EpochDayIndex.of(ImmutableBarSeries.empty());
+    Assertions.assertThat(index.size()).isEqualTo(0);
+    Assertions.assertThat(index.floorIndex(LocalDate.now())).isEqualTo(-1);
+    Assertions.assertThat(index.ceilingIndex(LocalDate.now())).isEqualTo(-1);
+  }
+}
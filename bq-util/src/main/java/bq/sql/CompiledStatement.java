@@ -0,0 +1,187 @@
+package bq.sql;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.flogger.FluentLogger;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * A SQL template whose {{param}} placeholders and ##token## substitutions have been parsed once.
+ * Instances are immutable and are cached by template text, so repeatedly executing the same
+ * template does no parsing and binds parameters by position.
+ */
+public class CompiledStatement {
+
+  static FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final int MAX_CACHE_SIZE = 1000;
+
+  static final Cache<String, CompiledStatement> cache =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHE_SIZE).build();
+
+  final String template;
+
+  // literal SQL between the {{param}} placeholders. There is always one more literal than param.
+  final List<String> literals;
+  final List<String> paramNames;
+
+  // the SQL with placeholders replaced by '?', split around ##token## markers
+  final List<String> textParts;
+  final List<String> tokenNames;
+
+  private CompiledStatement(String template) {
+    this.template = template;
+
+    List<String> literals = Lists.newArrayList();
+    List<String> paramNames = Lists.newArrayList();
+    int pos = 0;
+    while (true) {
+      int start = template.indexOf("{{", pos);
+      int end = start < 0 ? -1 : template.indexOf("}}", start + 2);
+      if (end < 0) {
+        literals.add(template.substring(pos));
+        break;
+      }
+      literals.add(template.substring(pos, start));
+      paramNames.add(template.substring(start + 2, end).trim());
+      pos = end + 2;
+    }
+    this.literals = List.copyOf(literals);
+    this.paramNames = List.copyOf(paramNames);
+
+    List<String> textParts = Lists.newArrayList();
+    List<String> tokenNames = Lists.newArrayList();
+    splitTokens(String.join("?", literals), textParts, tokenNames);
+    this.textParts = List.copyOf(textParts);
+    this.tokenNames = List.copyOf(tokenNames);
+  }
+
+  public static CompiledStatement compile(String template) {
+    Preconditions.checkNotNull(template, "template");
+    try {
+      return cache.get(template, () -> new CompiledStatement(template));
+    } catch (ExecutionException e) {
+      throw new DbException(e.getCause());
+    }
+  }
+
+  public String getTemplate() {
+    return template;
+  }
+
+  public List<String> getParamNames() {
+    return paramNames;
+  }
+
+  public int getParamCount() {
+    return paramNames.size();
+  }
+
+  List<String> getLiterals() {
+    return literals;
+  }
+
+  public boolean hasTokens() {
+    return !tokenNames.isEmpty();
+  }
+
+  /**
+   * JDBC (1-based) index of the first occurrence of the named parameter, or -1 if it is not
+   * present.
+   */
+  public int indexOf(String paramName) {
+    int i = paramNames.indexOf(paramName);
+    return i < 0 ? -1 : i + 1;
+  }
+
+  public String getSql() {
+    return getSql(Map.of());
+  }
+
+  public String getSql(Map<String, ?> tokens) {
+    if (tokenNames.isEmpty()) {
+      return textParts.get(0);
+    }
+    StringBuilder sb = new StringBuilder(template.length() + 32);
+    for (int i = 0; i < tokenNames.size(); i++) {
+      sb.append(textParts.get(i));
+      sb.append(lookupToken(tokenNames.get(i), tokens::get));
+    }
+    sb.append(textParts.get(textParts.size() - 1));
+    return sb.toString();
+  }
+
+  /**
+   * Binds values to the statement in parameter order.
+   */
+  public void bind(PreparedStatement ps, Object... values) throws SQLException {
+    int count = values != null ? values.length : 0;
+    if (count != paramNames.size()) {
+      throw new DbException(
+          String.format("expected %d bind values but got %d", paramNames.size(), count));
+    }
+    for (int i = 0; i < count; i++) {
+      ps.setObject(i + 1, SqlUtil.toSqlBindType(values[i]));
+    }
+  }
+
+  static Object lookupToken(String name, Function<String, ?> lookup) {
+    Object val = lookup.apply(name);
+    if (val == null) {
+      String msg = String.format("unbound token: ##%s##", name);
+      // Do not attach the SQL to the exception since it could have sensitive data
+      DbException ex = new DbException(msg);
+      logger.atWarning().withCause(ex).log("%s", msg);
+      throw ex;
+    }
+    return val;
+  }
+
+  /**
+   * Replaces ##token## markers in a single pass. Substituted values are not themselves scanned for
+   * markers.
+   */
+  static String interpolate(String sql, Function<String, ?> lookup) {
+    if (sql.indexOf("##") < 0) {
+      return sql;
+    }
+    List<String> textParts = Lists.newArrayList();
+    List<String> tokenNames = Lists.newArrayList();
+    splitTokens(sql, textParts, tokenNames);
+
+    StringBuilder sb = new StringBuilder(sql.length() + 32);
+    for (int i = 0; i < tokenNames.size(); i++) {
+      sb.append(textParts.get(i));
+      sb.append(lookupToken(tokenNames.get(i), lookup));
+    }
+    sb.append(textParts.get(textParts.size() - 1));
+    return sb.toString();
+  }
+
+  private static void splitTokens(String sql, List<String> textParts, List<String> tokenNames) {
+    int pos = 0;
+    while (true) {
+      int start = sql.indexOf("##", pos);
+      // token names must be at least one character long
+      int end = start < 0 ? -1 : sql.indexOf("##", start + 3);
+      if (end < 0) {
+        textParts.add(sql.substring(pos));
+        return;
+      }
+      textParts.add(sql.substring(pos, start));
+      tokenNames.add(sql.substring(start + 2, end));
+      pos = end + 2;
+    }
+  }
+
+  public String toString() {
+    return template;
+  }
+}
@@ -6,14 +6,18 @@ import bq.util.SqlExecutionFunction;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Streams;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.flogger.FluentLogger.Api;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -25,10 +29,19 @@ public class SqlTemplate {
   FluentLogger logger = FluentLogger.forEnclosingClass();
   Supplier<Connection> connectionSupplier = null;
 
+  // when set, batchUpdate() runs on a connection of its own so that switching off auto-commit
+  // does not affect other users of a shared connection
+  Supplier<Connection> batchConnectionSupplier = null;
+
   static Supplier<Connection> globalSupplier = null;
 
   private boolean omitNullRows = false;
 
+  private int fetchSize = 0;
+
+  // rows sent to the driver per executeBatch() call by batchUpdate()
+  static final int BATCH_SIZE = 1000;
+
   static boolean globalDataaSouceDisabled = false;
 
   public static void disableGlobalDataSource() {
@@ -102,6 +115,15 @@ public class SqlTemplate {
     return this.connectionSupplier.get();
   }
 
+  /**
+   * Supplies a separate connection to the same database for batchUpdate(). The connection is
+   * closed when the batch completes.
+   */
+  public SqlTemplate batchConnectionSupplier(Supplier<Connection> supplier) {
+    this.batchConnectionSupplier = supplier;
+    return this;
+  }
+
   public QueryPrinter print() {
     return new QueryPrinter(this, System.out);
   }
@@ -230,6 +252,109 @@ public class SqlTemplate {
     }
   }
 
+  /**
+   * Like query(), but rows are mapped lazily from the open ResultSet rather than being buffered in
+   * memory. The statement and ResultSet remain open until the stream is exhausted or closed, so
+   * callers should use try-with-resources.
+   */
+  public <T> Stream<T> stream(Consumer<StatementBuilder> builder, RowMapper<T> mapper) {
+
+    Preconditions.checkNotNull(builder, "builder cannot be null");
+    Preconditions.checkNotNull(mapper, "mapper cannot be null");
+
+    StatementBuilder b = StatementBuilder.create();
+
+    builder.accept(b);
+
+    String sql = b.getSql();
+
+    SqlCloser closer = SqlCloser.create();
+    try {
+      Connection c = getConnection();
+      closer.register(c);
+      PreparedStatement ps = c.prepareStatement(sql);
+      closer.register(ps);
+      if (fetchSize > 0) {
+        ps.setFetchSize(fetchSize);
+      }
+      b.bind(ps);
+
+      ResultSet rs = ps.executeQuery();
+      closer.register(rs);
+
+      RowIterator<T> it = new RowIterator<>(Results.create(rs), mapper, closer);
+      return Streams.stream(it).onClose(it::close);
+    } catch (SQLException e) {
+      closeQuietly(closer);
+      throw new DbException(e);
+    } catch (RuntimeException e) {
+      closeQuietly(closer);
+      throw e;
+    }
+  }
+
+  public <T> Stream<T> stream(String sql, RowMapper<T> mapper) {
+    return stream(c -> c.sql(sql), mapper);
+  }
+
+  private static void closeQuietly(SqlCloser closer) {
+    try {
+      closer.close();
+    } catch (RuntimeException e) {
+      // already logged by SqlCloser
+    }
+  }
+
+  class RowIterator<T> extends AbstractIterator<T> {
+    Results results;
+    RowMapper<T> mapper;
+    SqlCloser closer;
+    boolean closed = false;
+
+    RowIterator(Results results, RowMapper<T> mapper, SqlCloser closer) {
+      this.results = results;
+      this.mapper = mapper;
+      this.closer = closer;
+    }
+
+    @Override
+    protected T computeNext() {
+      try {
+        while (!closed && results.next()) {
+          T t = mapper.map(results);
+          if (omitNullRows && t == null) {
+            continue;
+          }
+          return t;
+        }
+      } catch (SQLException e) {
+        close();
+        throw new DbException(e);
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+      close();
+      return endOfData();
+    }
+
+    void close() {
+      if (!closed) {
+        closed = true;
+        closer.close();
+      }
+    }
+  }
+
+  /**
+   * JDBC fetch size hint used by stream(). Zero (the default) leaves it to the driver.
+   */
+  public SqlTemplate fetchSize(int fetchSize) {
+    Preconditions.checkArgument(fetchSize >= 0, "fetchSize must be >= 0");
+    this.fetchSize = fetchSize;
+    return this;
+  }
+
   public boolean execute(Consumer<StatementBuilder> builder) {
     Preconditions.checkNotNull(builder);
     StatementBuilder b = StatementBuilder.create();
@@ -271,6 +396,91 @@ public class SqlTemplate {
         });
   }
 
+  public int[] batchUpdate(String template, Iterable<Object[]> rows) {
+    return batchUpdate(template, Map.of(), rows);
+  }
+
+  /**
+   * Executes the same statement once per row using JDBC batching. The statement is prepared once
+   * and all rows are applied in a single transaction. Each row supplies values for the {{param}}
+   * placeholders in the order that they appear in the template. ##token## markers are substituted
+   * once from the given tokens.
+   *
+   * <p>The transaction runs on the batch connection if one has been supplied. Otherwise batches on
+   * the same connection are serialized.
+   *
+   * @return update count for each row
+   */
+  public int[] batchUpdate(String template, Map<String, ?> tokens, Iterable<Object[]> rows) {
+    Preconditions.checkNotNull(template, "template cannot be null");
+    Preconditions.checkNotNull(tokens, "tokens cannot be null");
+    Preconditions.checkNotNull(rows, "rows cannot be null");
+
+    CompiledStatement compiled = CompiledStatement.compile(template);
+    String sql = compiled.getSql(tokens);
+
+    if (batchConnectionSupplier != null) {
+      // closed here because SqlCloser leaves DuckDB connections open
+      Connection batchConnection = batchConnectionSupplier.get();
+      try (batchConnection) {
+        return executeContext(batchConnection, ctx -> executeBatch(ctx, compiled, sql, rows));
+      } catch (SQLException e) {
+        throw new DbException(e);
+      }
+    }
+    Connection c = getConnection();
+    synchronized (c) {
+      return executeContext(c, ctx -> executeBatch(ctx, compiled, sql, rows));
+    }
+  }
+
+  private int[] executeBatch(
+      SqlExecutionContext ctx, CompiledStatement compiled, String sql, Iterable<Object[]> rows)
+      throws SQLException {
+    Connection c = ctx.getConnection();
+    PreparedStatement ps = c.prepareStatement(sql);
+    ctx.register(ps);
+
+    boolean autoCommit = c.getAutoCommit();
+    if (autoCommit) {
+      c.setAutoCommit(false);
+    }
+    try {
+      int[] counts = new int[0];
+      int pending = 0;
+      for (Object[] row : rows) {
+        compiled.bind(ps, row);
+        ps.addBatch();
+        if (++pending >= BATCH_SIZE) {
+          counts = concat(counts, ps.executeBatch());
+          pending = 0;
+        }
+      }
+      if (pending > 0) {
+        counts = concat(counts, ps.executeBatch());
+      }
+      if (autoCommit) {
+        c.commit();
+      }
+      return counts;
+    } catch (SQLException | RuntimeException e) {
+      if (autoCommit) {
+        c.rollback();
+      }
+      throw e;
+    } finally {
+      if (autoCommit) {
+        c.setAutoCommit(true);
+      }
+    }
+  }
+
+  private static int[] concat(int[] a, int[] b) {
+    int[] result = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+
   ////////
   ////////
   ////////
@@ -338,8 +548,12 @@ public class SqlTemplate {
   }
 
   public <T> T executeContext(SqlExecutionFunction<T> c) {
+    return executeContext(getConnection(), c);
+  }
+
+  private <T> T executeContext(Connection connection, SqlExecutionFunction<T> c) {
 
-    try (SqlExecutionContext ctx = new SqlExecutionContext(getConnection())) {
+    try (SqlExecutionContext ctx = new SqlExecutionContext(connection)) {
 
       return (T) c.apply(ctx);
 
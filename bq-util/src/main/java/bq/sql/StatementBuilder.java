@@ -10,17 +10,10 @@ import java.sql.Statement;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class StatementBuilder {
 
   static FluentLogger logger = FluentLogger.forEnclosingClass();
-  static final Pattern parsePattern =
-      Pattern.compile("(.*?)\\{\\{(.*?)\\}\\}(.*)", Pattern.MULTILINE | Pattern.DOTALL);
-
-  static final Pattern textualSubstitutionPattern =
-      Pattern.compile("(.*?)(##(.+?)##)(.*)", Pattern.MULTILINE | Pattern.DOTALL);
   List<String> fragments = Lists.newArrayList();
   int index = 0;
   List<String> paramNames = Lists.newArrayList();
@@ -29,6 +22,11 @@ public class StatementBuilder {
 
   List<Consumer<Statement>> deferredBindings = Lists.newArrayList();
 
+  // set while the statement consists of a single sql() call, whose compiled form then provides the
+  // SQL and binds the parameters without rebuilding anything
+  CompiledStatement compiled;
+  int sqlCount = 0;
+
   private StatementBuilder() {}
 
   public static StatementBuilder create() {
@@ -83,46 +81,33 @@ public class StatementBuilder {
     }
 
     if (bindVals == null) {
-      bindVals = Lists.newArrayList();
+      bindVals = List.of();
     }
 
-    List<Object> newList = Lists.newArrayList();
-    newList.addAll(bindVals);
-    bindVals = newList;
-
-    int expectedTotalParamCount = paramNames.size() + bindVals.size();
-
-    Matcher m = parsePattern.matcher(s);
-    if (m.matches()) {
-      String pre = m.group(1);
-      String paramName = m.group(2).trim();
-      String post = m.group(3);
-
-      sqlWithBindings(pre, null);
-      if (bindVals.isEmpty()) {
-        addParam(paramName);
-      } else {
-
-        addParam(paramName, bindVals.removeFirst());
-      }
-
-      sqlWithBindings(post, bindVals);
-    } else {
-      fragments.add(s);
+    // parsing is cached, so repeated use of the same SQL does not re-scan it
+    CompiledStatement compiled = CompiledStatement.compile(s);
+    this.compiled = ++sqlCount == 1 ? compiled : null;
+    List<String> literals = compiled.getLiterals();
+    List<String> names = compiled.getParamNames();
+
+    // if no positional parameters were provided, it is not a problem
+    // that there are unbound parameters. They may be bound at a later time.
+    // BUT, if positional parameters were supplied, there cannot be more than the placeholders
+    if (bindVals.size() > names.size()) {
+      throw new DbException(
+          String.format(
+              "expected %d bind values but got %d sql=<%s>", names.size(), bindVals.size(), s));
     }
 
-    if (expectedTotalParamCount != paramNames.size()) {
-      if (bindVals.size() == 0) {
-        // if no positional parameters were provided, it is not a problem
-        // that there are unbound parameters. They may be bound at a later time.
+    for (int i = 0; i < names.size(); i++) {
+      fragments.add(literals.get(i));
+      if (i < bindVals.size()) {
+        addParam(names.get(i), bindVals.get(i));
       } else {
-        // BUT, if positional parameters were supplied, they need to match
-        throw new DbException(
-            String.format(
-                "expected %d bind values but got %d sql=<%s>",
-                expectedTotalParamCount - bindVals.size(), bindVals.size(), s));
+        addParam(names.get(i));
       }
     }
+    fragments.add(literals.get(literals.size() - 1));
 
     return this;
   }
@@ -144,86 +129,59 @@ public class StatementBuilder {
   }
 
   public String getSql() {
-    String sql = "";
+    if (compiled != null) {
+      return compiled.getSql(bindings).trim();
+    }
+    StringBuilder sql = new StringBuilder();
     for (String fragment : fragments) {
       boolean addBlank = true;
 
       fragment = fragment.trim();
-      if (sql.isBlank() || sql.endsWith(" ") || fragment.startsWith(" ")) {
+      int len = sql.length();
+      char last = len > 0 ? sql.charAt(len - 1) : ' ';
+      if (last == ' ') {
         addBlank = false;
       } else if (fragment.startsWith("?")) {
-        if (sql.endsWith("=") || sql.endsWith(",")) {
+        if (last == '=' || last == ',') {
           addBlank = false;
         }
-      } else if (sql.endsWith("?")) {
-        if (fragment.startsWith(" ")) {}
       }
 
       if (addBlank) {
-        sql += " ";
+        sql.append(' ');
       }
-      sql += fragment;
+      sql.append(fragment);
     }
-    sql = interpolate(sql);
-    sql = sql.trim();
 
-    return sql;
+    return interpolate(sql.toString()).trim();
   }
 
   String interpolate(final String sql) {
-    Matcher m = textualSubstitutionPattern.matcher(sql);
-
-    if (m.matches()) {
-      // example: select * from ##table## where ##col##=1
-
-      // group 1 will contain the text before the marker: "select * from "
-      // group 2 will contain the marker: ##table##
-      // group 3 will contain the text inside the marker: table
-      // group 4 will contain the text after the marker " where ##col##=1"
-
-      Object subVal = this.bindings.get(m.group(3));
-      if (subVal == null) {
-        //
-        String msg = String.format("unbound token: %s", m.group(2));
-
-        // Do not attach the SQL to the exception since it could have sensitive data
-        DbException ex = new DbException(msg);
-        // this will probably end up getting logged twice, but it is nice to have the
-        // SQL and the
-        // call
-        // site together
-        logger.atWarning().withCause(ex).log("%s - %s", msg, sql);
-        throw ex;
-      }
-
-      String interpolatedValue = subVal.toString();
-
-      return m.group(1) + interpolatedValue + interpolate(m.group(4));
-    }
-
-    return sql;
+    // example: select * from ##table## where ##col##=1
+    return CompiledStatement.interpolate(sql, bindings::get);
   }
 
   public StatementBuilder bind(PreparedStatement ps) throws SQLException {
-    for (int i = 0; i < paramNames.size(); i++) {
-      int index = i + 1;
+    Object[] values = new Object[paramNames.size()];
+    for (int i = 0; i < values.length; i++) {
       String paramName = paramNames.get(i);
-
-      Object val = null;
-
       if (bindings.containsKey(paramName)) {
-        val = bindings.get(paramName);
+        values[i] = bindings.get(paramName);
       } else {
-        val = bindings.get(toKey(index));
+        values[i] = bindings.get(toKey(i + 1));
       }
+    }
+    if (compiled != null) {
+      compiled.bind(ps, values);
+    } else {
+      for (int i = 0; i < values.length; i++) {
+        ps.setObject(i + 1, SqlUtil.toSqlBindType(values[i]));
+      }
+    }
 
-      Object convertedVal = SqlUtil.toSqlBindType(val);
-
-      ps.setObject(index, convertedVal);
-
-      // now apply and deferred bindings that might be set
+    // now apply and deferred bindings that might be set
+    if (values.length > 0) {
       for (Consumer<Statement> deferred : deferredBindings) {
-
         deferred.accept(ps);
       }
     }
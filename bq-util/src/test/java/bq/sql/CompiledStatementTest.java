@@ -0,0 +1,51 @@
+package bq.sql;
+
+import java.util.Map;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CompiledStatementTest {
+
+  @Test
+  public void testIt() {
+    CompiledStatement s =
+        CompiledStatement.compile("select * from test where foo={{bar}} and fizz={{ buzz }}");
+
+    Assertions.assertThat(s.getSql()).isEqualTo("select * from test where foo=? and fizz=?");
+    Assertions.assertThat(s.getParamNames()).containsExactly("bar", "buzz");
+    Assertions.assertThat(s.indexOf("buzz")).isEqualTo(2);
+    Assertions.assertThat(s.indexOf("nope")).isEqualTo(-1);
+    Assertions.assertThat(s.hasTokens()).isFalse();
+  }
+
+  @Test
+  public void testCache() {
+    String sql = "update ##table## set ##column##={{val}} where rowid={{id}}";
+    Assertions.assertThat(CompiledStatement.compile(sql))
+        .isSameAs(CompiledStatement.compile(sql));
+  }
+
+  @Test
+  public void testTokens() {
+    CompiledStatement s =
+        CompiledStatement.compile("update ##table## set ##column##={{val}} where rowid={{id}}");
+
+    Assertions.assertThat(s.hasTokens()).isTrue();
+    Assertions.assertThat(s.getSql(Map.of("table", "btc", "column", "sma")))
+        .isEqualTo("update btc set sma=? where rowid=?");
+
+    try {
+      s.getSql(Map.of("table", "btc"));
+      Assertions.failBecauseExceptionWasNotThrown(DbException.class);
+    } catch (DbException e) {
+      Assertions.assertThat(e.getMessage()).contains("column");
+    }
+  }
+
+  @Test
+  public void testNoParams() {
+    CompiledStatement s = CompiledStatement.compile("select 1");
+    Assertions.assertThat(s.getSql()).isEqualTo("select 1");
+    Assertions.assertThat(s.getParamCount()).isEqualTo(0);
+  }
+}
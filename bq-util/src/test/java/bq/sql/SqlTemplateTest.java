@@ -6,7 +6,9 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
+import org.duckdb.DuckDBConnection;
 import org.assertj.core.api.Assertions;
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.AfterEach;
@@ -114,6 +116,98 @@ public class SqlTemplateTest {
         .isEmpty();
   }
 
+  @Test
+  public void testStream() {
+
+    template.execute("create table test as select range as id from range(100000)");
+
+    try (var stream =
+        template
+            .fetchSize(1000)
+            .stream("select id from test order by id", rs -> rs.getLong("id").get())) {
+      Assertions.assertThat(stream.mapToLong(it -> it).sum()).isEqualTo(99999L * 100000L / 2);
+    }
+
+    // partially consumed stream
+    try (var stream =
+        template.stream("select id from test order by id", rs -> rs.getLong("id").get())) {
+      Assertions.assertThat(stream.limit(5).toList()).containsExactly(0L, 1L, 2L, 3L, 4L);
+    }
+
+    try (var stream =
+        template.stream(
+            c -> c.sql("select id from test where id < {{id}} order by id", 3),
+            rs -> rs.getLong("id").get())) {
+      Assertions.assertThat(stream.iterator()).toIterable().containsExactly(0L, 1L, 2L);
+    }
+  }
+
+  @Test
+  public void testBatchUpdate() {
+
+    template.execute("create table test (id int, name varchar(10))");
+
+    List<Object[]> rows = Lists.newArrayList();
+    for (int i = 0; i < 2500; i++) {
+      rows.add(new Object[] {i, "n" + i});
+    }
+    int[] counts =
+        template.batchUpdate(
+            "insert into ##table## (id,name) values ({{id}},{{name}})",
+            Map.of("table", "test"),
+            rows);
+    Assertions.assertThat(counts).hasSize(2500);
+    Assertions.assertThat(template.queryInt(c -> c.sql("select count(*) from test")))
+        .isEqualTo(2500);
+
+    counts =
+        template.batchUpdate(
+            "update test set name={{name}} where id={{id}}",
+            List.<Object[]>of(new Object[] {"x", 1}, new Object[] {"y", 5000}));
+    Assertions.assertThat(counts).containsExactly(1, 0);
+    Assertions.assertThat(template.queryString(c -> c.sql("select name from test where id=1")))
+        .isEqualTo("x");
+
+    // rows must match the number of placeholders
+    try {
+      template.batchUpdate(
+          "update test set name={{name}} where id={{id}}", List.<Object[]>of(new Object[] {"x"}));
+      Assertions.failBecauseExceptionWasNotThrown(DbException.class);
+    } catch (DbException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testBatchUpdateOnBatchConnection() throws SQLException {
+    template.execute("create table test (id int)");
+
+    Connection shared = connections.getFirst();
+    List<Connection> batchConnections = Lists.newArrayList();
+    template.batchConnectionSupplier(
+        () -> {
+          try {
+            Connection c = ((DuckDBConnection) shared).duplicate();
+            batchConnections.add(c);
+            return c;
+          } catch (SQLException e) {
+            throw new DbException(e);
+          }
+        });
+
+    int[] counts =
+        template.batchUpdate(
+            "insert into test (id) values ({{id}})",
+            List.<Object[]>of(new Object[] {1}, new Object[] {2}));
+    Assertions.assertThat(counts).hasSize(2);
+
+    // the batch ran on its own connection, which has been closed, and is visible to the shared one
+    Assertions.assertThat(batchConnections).hasSize(1);
+    Assertions.assertThat(batchConnections.getFirst().isClosed()).isTrue();
+    Assertions.assertThat(shared.getAutoCommit()).isTrue();
+    Assertions.assertThat(template.queryInt(c -> c.sql("select count(*) from test"))).isEqualTo(2);
+  }
+
   ////////
   ////////
   ////////
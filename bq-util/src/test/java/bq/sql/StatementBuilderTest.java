@@ -75,4 +75,19 @@ public class StatementBuilderTest {
       Assertions.assertThat(e.getMessage()).contains("table");
     }
   }
+
+  @Test
+  public void testSingleStatementUsesCompiledSql() {
+    String template = "select * from test where foo={{bar}} and fizz={{buzz}}";
+    StatementBuilder b = StatementBuilder.create().sql(template, 1, 2);
+
+    // the SQL is not rebuilt for a single sql() call
+    Assertions.assertThat(b.getSql()).isSameAs(CompiledStatement.compile(template).getSql());
+    Assertions.assertThat(b.compiled).isSameAs(CompiledStatement.compile(template));
+
+    b.sql("limit 10");
+    Assertions.assertThat(b.compiled).isNull();
+    Assertions.assertThat(b.getSql())
+        .isEqualTo("select * from test where foo=? and fizz=? limit 10");
+  }
 }